@@ -0,0 +1,65 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * compresses in a single pass with adaptive huffman codes. the tree
+ * starts empty and is updated after every value, and the uncompressor
+ * makes the same updates, so there's no header beyond the magic
+ * number and format, no counting pass, and memory use is the same
+ * no matter how long the input is
+ */
+public class HuffAdaptiveCompressor implements IHuffFormats
+{
+	private final int READ_BUFFER_SIZE = 1 << 16;
+	private HuffAdaptiveTree tree;
+	private byte[] buffer;
+	// how many bytes the last compress call read
+	private long amtReadTotal;
+
+	/**
+	 * initializes the instance variables
+	 */
+	public HuffAdaptiveCompressor()
+	{
+		tree = new HuffAdaptiveTree();
+		buffer = new byte[READ_BUFFER_SIZE];
+		amtReadTotal = 0;
+	}
+
+	/**
+	 * compresses everything in the input to the output and
+	 * returns the number of bits written
+	 */
+	public long compress(InputStream in, OutputStream out) throws IOException
+	{
+		tree.reset();
+		amtReadTotal = 0;
+		HuffBitWriter outStream = new HuffBitWriter(out);
+		outStream.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+		outStream.writeBits(BITS_PER_INT, STORE_ADAPTIVE);
+		int amtRead = in.read(buffer, 0, buffer.length);
+		while(amtRead != -1)
+		{
+			for(int i = 0; i < amtRead; i++)
+			{
+				tree.encode(buffer[i] & 0xff, outStream);
+			}
+			amtReadTotal += amtRead;
+			amtRead = in.read(buffer, 0, buffer.length);
+		}
+		tree.encode(PSEUDO_EOF, outStream);
+		long bitsWritten = outStream.getBitsWritten();
+		in.close();
+		outStream.close();
+		return bitsWritten;
+	}
+
+	/**
+	 * returns how many bytes the last compress call read
+	 */
+	public long getBytesRead()
+	{
+		return amtReadTotal;
+	}
+}
@@ -0,0 +1,229 @@
+import java.io.IOException;
+
+/**
+ * the huffman tree of the adaptive format, kept up to date one value
+ * at a time with the FGK algorithm so the encoder and decoder never
+ * need the counts up front. every node has a number, its index in
+ * the arrays, and the weights never go down as the numbers go up
+ * (the sibling property), with the root having the highest number.
+ * values that haven't been seen yet are sent as the code of the NYT
+ * (not yet transmitted) leaf followed by the value in 9 bits
+ */
+public class HuffAdaptiveTree implements IHuffConstants
+{
+	// pseudo eof is a value like any other
+	public static final int NUM_VALUES = ALPH_SIZE + 1;
+	// every value gets a leaf and a parent, plus the NYT leaf
+	private static final int MAX_NODES = (2 * NUM_VALUES) + 1;
+	private static final int ROOT = MAX_NODES - 1;
+	private final int NUM_BITS_IN_LEAF = 9;
+	private long[] weight;
+	private int[] parent;
+	// right is always left + 1 when left isn't -1
+	private int[] left;
+	private int[] value;
+	// the node of each value, -1 until it's been seen
+	private int[] leafOf;
+	private int nyt;
+	// the bits of a code from the leaf up, used when writing
+	private int[] pathBits;
+
+	/**
+	 * makes a tree that only has the NYT leaf
+	 */
+	public HuffAdaptiveTree()
+	{
+		weight = new long[MAX_NODES];
+		parent = new int[MAX_NODES];
+		left = new int[MAX_NODES];
+		value = new int[MAX_NODES];
+		leafOf = new int[NUM_VALUES];
+		pathBits = new int[MAX_NODES];
+		reset();
+	}
+
+	/**
+	 * goes back to a tree that only has the NYT leaf
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < MAX_NODES; i++)
+		{
+			weight[i] = 0;
+			parent[i] = -1;
+			left[i] = -1;
+			value[i] = -1;
+		}
+		for(int i = 0; i < NUM_VALUES; i++)
+		{
+			leafOf[i] = -1;
+		}
+		nyt = ROOT;
+	}
+
+	/**
+	 * writes the code for the given value and then
+	 * updates the tree for it
+	 */
+	public void encode(int symbol, HuffBitWriter outStream) throws IOException
+	{
+		int node = leafOf[symbol];
+		if(node == -1)
+		{
+			writePath(nyt, outStream);
+			outStream.writeBits(NUM_BITS_IN_LEAF, symbol);
+		}
+		else
+		{
+			writePath(node, outStream);
+		}
+		update(symbol);
+	}
+
+	/**
+	 * reads the next code, updates the tree for its value and
+	 * returns the value, or -1 if the input ran out first
+	 */
+	public int decode(HuffBitReader inStream) throws IOException
+	{
+		int node = ROOT;
+		while(left[node] != -1)
+		{
+			int bit = inStream.readBits(1);
+			if(bit == -1)
+			{
+				return -1;
+			}
+			node = left[node] + bit;
+		}
+		int symbol;
+		if(node == nyt)
+		{
+			symbol = inStream.readBits(NUM_BITS_IN_LEAF);
+			if(symbol == -1)
+			{
+				return -1;
+			}
+			if( (symbol >= NUM_VALUES) || (leafOf[symbol] != -1) )
+			{
+				throw new IllegalStateException("invalid adaptive code.");
+			}
+		}
+		else
+		{
+			symbol = value[node];
+		}
+		update(symbol);
+		return symbol;
+	}
+
+	/**
+	 * writes the path from the root down to the given node,
+	 * 0 for going left and 1 for going right
+	 */
+	private void writePath(int node, HuffBitWriter outStream) throws IOException
+	{
+		int length = 0;
+		while(node != ROOT)
+		{
+			pathBits[length] = node - left[parent[node]];
+			length++;
+			node = parent[node];
+		}
+		// packed into ints from the root end
+		while(length > 0)
+		{
+			int amtToWrite = Math.min(length, BITS_PER_INT);
+			int bits = 0;
+			for(int i = 0; i < amtToWrite; i++)
+			{
+				length--;
+				bits = (bits << 1) | pathBits[length];
+			}
+			outStream.writeBits(amtToWrite, bits);
+		}
+	}
+
+	/**
+	 * adds one to the weight of the given value's leaf and every
+	 * node above it, swapping nodes as it goes to keep the
+	 * sibling property
+	 */
+	private void update(int symbol)
+	{
+		int node = leafOf[symbol];
+		if(node == -1)
+		{
+			// the NYT leaf gives birth to a new NYT and the value's leaf
+			int oldNyt = nyt;
+			left[oldNyt] = oldNyt - 2;
+			nyt = oldNyt - 2;
+			int leaf = oldNyt - 1;
+			parent[nyt] = oldNyt;
+			parent[leaf] = oldNyt;
+			value[leaf] = symbol;
+			leafOf[symbol] = leaf;
+			value[oldNyt] = -1;
+			// nothing else has a weight of 0, so neither needs a swap
+			weight[leaf]++;
+			weight[oldNyt]++;
+			node = parent[oldNyt];
+		}
+		while(node != -1)
+		{
+			int leader = node;
+			while( (leader < ROOT) && (weight[leader + 1] == weight[node]) )
+			{
+				leader++;
+			}
+			if( (leader != node) && (leader != parent[node]) )
+			{
+				swap(node, leader);
+				node = leader;
+			}
+			weight[node]++;
+			node = parent[node];
+		}
+	}
+
+	/**
+	 * swaps the subtrees numbered a and b, which have the same
+	 * weight. the slots keep their parents and numbers, and what
+	 * hangs under them trades places
+	 */
+	private void swap(int a, int b)
+	{
+		int tempLeft = left[a];
+		left[a] = left[b];
+		left[b] = tempLeft;
+		int tempValue = value[a];
+		value[a] = value[b];
+		value[b] = tempValue;
+		relink(a);
+		relink(b);
+		if(nyt == a)
+		{
+			nyt = b;
+		}
+		else if(nyt == b)
+		{
+			nyt = a;
+		}
+	}
+
+	/**
+	 * points whatever now hangs in the given slot back at it
+	 */
+	private void relink(int node)
+	{
+		if(left[node] != -1)
+		{
+			parent[left[node]] = node;
+			parent[left[node] + 1] = node;
+		}
+		else if(value[node] != -1)
+		{
+			leafOf[value[node]] = node;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * reads the adaptive format back, making the same tree
+ * updates the compressor made as each value is decoded
+ */
+public class HuffAdaptiveUncompressor implements IHuffConstants
+{
+	private final int WRITE_BUFFER_SIZE = 1 << 16;
+	private HuffAdaptiveTree tree;
+	private byte[] buffer;
+
+	/**
+	 * initializes the instance variables
+	 */
+	public HuffAdaptiveUncompressor()
+	{
+		tree = new HuffAdaptiveTree();
+		buffer = new byte[WRITE_BUFFER_SIZE];
+	}
+
+	/**
+	 * uncompresses everything after the header format, which has
+	 * already been read, returning the number of bits written
+	 */
+	public long uncompress(HuffBitReader inStream, OutputStream out) throws IOException
+	{
+		tree.reset();
+		long bitCount = 0;
+		int pos = 0;
+		int symbol = tree.decode(inStream);
+		while(symbol != PSEUDO_EOF)
+		{
+			if(symbol == -1)
+			{
+				throw new IllegalStateException("unexpected end of file.");
+			}
+			buffer[pos] = (byte)symbol;
+			pos++;
+			if(pos == buffer.length)
+			{
+				out.write(buffer, 0, pos);
+				bitCount += (long)pos * BITS_PER_WORD;
+				pos = 0;
+			}
+			symbol = tree.decode(inStream);
+		}
+		out.write(buffer, 0, pos);
+		bitCount += (long)pos * BITS_PER_WORD;
+		return bitCount;
+	}
+}
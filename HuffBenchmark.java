@@ -0,0 +1,329 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * times every stage of compressing and uncompressing over synthetic
+ * inputs with very different entropy: uniform random bytes, english
+ * like text, a heavily skewed spread and a single repeated byte. each
+ * case runs once untimed to warm up the jit and is then repeated
+ * until the time per case is used up. run with
+ * java HuffBenchmark [megabytes per input] [milliseconds per case]
+ */
+public class HuffBenchmark implements IHuffFormats
+{
+	private static final String[] CORPORA = {"uniform", "text", "skewed", "single"};
+	private static final int[] FORMATS = {STORE_COUNTS, STORE_TREE, STORE_CANONICAL};
+	private static final String[] FORMAT_NAMES = {"counts", "tree", "canonical"};
+	private static final int DEFAULT_MEGABYTES = 4;
+	private static final int DEFAULT_MILLIS = 2000;
+	private static final String[] WORDS = {"the", "of", "and", "to", "in", "a", "is", "that",
+		"for", "it", "as", "was", "with", "be", "by", "on", "not", "he", "this", "are", "or",
+		"his", "from", "at", "which", "but", "have", "an", "had", "they", "you", "were",
+		"their", "one", "all", "we", "can", "her", "has", "there", "been", "if", "more",
+		"when", "will", "would", "who", "so", "no", "compression", "huffman", "tree"};
+	// keeps the jit from throwing away the results
+	private static long sink;
+
+	public static void main(String[] args) throws IOException
+	{
+		int megabytes = DEFAULT_MEGABYTES;
+		int millis = DEFAULT_MILLIS;
+		if(args.length > 0)
+		{
+			megabytes = Integer.parseInt(args[0]);
+		}
+		if(args.length > 1)
+		{
+			millis = Integer.parseInt(args[1]);
+		}
+		System.out.printf("%-8s %-20s %14s %10s%n", "input", "case", "ns per op", "MB/s");
+		for(String corpus: CORPORA)
+		{
+			byte[] data = makeCorpus(corpus, megabytes << 20, 2718);
+			report(corpus, "histogram", data.length, timeHistogram(data, millis));
+			int[] counts = countWithEof(data);
+			report(corpus, "tree", 0, timeTree(counts, millis));
+			report(corpus, "tree + code map", 0, timeCodeMap(counts, millis));
+			for(int i = 0; i < FORMATS.length; i++)
+			{
+				byte[] compressed = compressOnce(data, FORMATS[i]);
+				report(corpus, "compress " + FORMAT_NAMES[i], data.length,
+					timeCompress(data, FORMATS[i], millis));
+				report(corpus, "uncompress " + FORMAT_NAMES[i], data.length,
+					timeUncompress(compressed, millis));
+			}
+			reportHeaders(corpus, data, counts);
+		}
+	}
+
+	/**
+	 * prints one line of results, with the throughput if
+	 * the case works through numBytes bytes of input
+	 */
+	private static void report(String corpus, String name, int numBytes, double nanosPerOp)
+	{
+		String throughput = "";
+		if(numBytes > 0)
+		{
+			throughput = String.format("%10.1f", numBytes / (nanosPerOp / 1e9) / (1 << 20));
+		}
+		System.out.printf("%-8s %-20s %14.0f %10s%n", corpus, name, nanosPerOp, throughput);
+	}
+
+	/**
+	 * prints how many bits each header format takes for the
+	 * given input next to the bits for the codes themselves
+	 */
+	private static void reportHeaders(String corpus, byte[] data, int[] counts) throws IOException
+	{
+		HuffmanCodeTree huffer = new HuffmanCodeTree();
+		huffer.buildHuffmanCodeTree(counts);
+		long codeBits = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			codeBits += (long)counts[i] * huffer.getCodeLengths()[i];
+		}
+		for(int i = 0; i < FORMATS.length; i++)
+		{
+			HuffCompressor comp = new HuffCompressor();
+			comp.preprocessCompressLarge(new ByteArrayInputStream(data), FORMATS[i]);
+			// what's left after the magic number, format and codes is the header
+			long headerBits = comp.getNewAmtOfBits() - (BITS_PER_INT * 2) - codeBits;
+			System.out.printf("%-8s %-20s %14d bits of header, %d bits of codes%n", corpus,
+				"header " + FORMAT_NAMES[i], headerBits, codeBits);
+		}
+	}
+
+	/**
+	 * returns the average nanoseconds to count the bytes
+	 * the way the compressor does
+	 */
+	private static double timeHistogram(byte[] data, int millis)
+	{
+		HuffCompressor comp = new HuffCompressor();
+		Timer timer = new Timer(millis);
+		while(timer.next())
+		{
+			sink += comp.getFreqArr(new ByteArrayInputStream(data))[0];
+		}
+		return timer.nanosPerOp();
+	}
+
+	/**
+	 * returns the average nanoseconds to build the tree alone
+	 */
+	private static double timeTree(int[] counts, int millis)
+	{
+		HuffmanTreeBuilder builder = new HuffmanTreeBuilder();
+		long[] freqs = new long[counts.length];
+		for(int i = 0; i < counts.length; i++)
+		{
+			freqs[i] = counts[i];
+		}
+		Timer timer = new Timer(millis);
+		while(timer.next())
+		{
+			sink += builder.toTreeNode(builder.buildWithHeap(freqs)).getFrequency();
+		}
+		return timer.nanosPerOp();
+	}
+
+	/**
+	 * returns the average nanoseconds to build the tree and its
+	 * code map, the difference from timeTree being the code map
+	 */
+	private static double timeCodeMap(int[] counts, int millis)
+	{
+		HuffmanCodeTree huffer = new HuffmanCodeTree();
+		Timer timer = new Timer(millis);
+		while(timer.next())
+		{
+			huffer.reset();
+			huffer.buildHuffmanCodeTree(counts);
+			sink += huffer.getMaxCodeLength();
+		}
+		return timer.nanosPerOp();
+	}
+
+	/**
+	 * returns the average nanoseconds for preprocessCompress
+	 * and compress together with the given header format
+	 */
+	private static double timeCompress(byte[] data, int headerFormat, int millis) throws IOException
+	{
+		Timer timer = new Timer(millis);
+		while(timer.next())
+		{
+			sink += compressOnce(data, headerFormat).length;
+		}
+		return timer.nanosPerOp();
+	}
+
+	/**
+	 * returns the average nanoseconds to uncompress
+	 */
+	private static double timeUncompress(byte[] compressed, int millis) throws IOException
+	{
+		Timer timer = new Timer(millis);
+		while(timer.next())
+		{
+			SimpleHuffProcessor proc = new SimpleHuffProcessor();
+			sink += proc.uncompressLarge(new ByteArrayInputStream(compressed), new DiscardOutputStream());
+		}
+		return timer.nanosPerOp();
+	}
+
+	/**
+	 * compresses the data with the given header format
+	 */
+	private static byte[] compressOnce(byte[] data, int headerFormat) throws IOException
+	{
+		SimpleHuffProcessor proc = new SimpleHuffProcessor();
+		proc.preprocessCompressLarge(new ByteArrayInputStream(data), headerFormat);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+		proc.compressLarge(new ByteArrayInputStream(data), out, true);
+		return out.toByteArray();
+	}
+
+	/**
+	 * returns the counts of every byte with pseudo eof added
+	 */
+	private static int[] countWithEof(byte[] data)
+	{
+		// the plus one is to hold pseudo eof in index 256
+		int[] counts = new int[ALPH_SIZE + 1];
+		for(byte b: data)
+		{
+			counts[b & 0xff]++;
+		}
+		counts[PSEUDO_EOF]++;
+		return counts;
+	}
+
+	/**
+	 * makes size bytes of the given kind of input
+	 */
+	public static byte[] makeCorpus(String kind, int size, long seed)
+	{
+		Random rand = new Random(seed);
+		byte[] data = new byte[size];
+		if(kind.equals("uniform"))
+		{
+			rand.nextBytes(data);
+		}
+		else if(kind.equals("text"))
+		{
+			int pos = 0;
+			while(pos < size)
+			{
+				String word = WORDS[(int)(WORDS.length * Math.pow(rand.nextDouble(), 2))];
+				for(int i = 0; (i < word.length()) && (pos < size); i++)
+				{
+					data[pos++] = (byte)word.charAt(i);
+				}
+				if(pos < size)
+				{
+					int r = rand.nextInt(20);
+					data[pos++] = (byte)((r == 0) ? '.' : (r == 1) ? ',' : (r == 2) ? '\n' : ' ');
+				}
+			}
+		}
+		else if(kind.equals("skewed"))
+		{
+			for(int i = 0; i < size; i++)
+			{
+				// each value is half as likely as the one before it
+				int value = Integer.numberOfTrailingZeros(rand.nextInt() | (1 << 30));
+				data[i] = (byte)value;
+			}
+		}
+		else if(kind.equals("single"))
+		{
+			Arrays.fill(data, (byte)'a');
+		}
+		else
+		{
+			throw new IllegalArgumentException("invalid corpus given.");
+		}
+		return data;
+	}
+
+	/**
+	 * runs a case once to warm up and then counts how many
+	 * times it can be repeated in the given time
+	 */
+	private static class Timer
+	{
+		private long millis;
+		private long start;
+		private long end;
+		private int count;
+		private boolean warmedUp;
+
+		public Timer(int millis)
+		{
+			this.millis = millis;
+			count = -1;
+			warmedUp = false;
+		}
+
+		/**
+		 * returns true while the case should run again
+		 */
+		public boolean next()
+		{
+			long now = System.nanoTime();
+			if(!warmedUp)
+			{
+				if(count == -1)
+				{
+					count = 0;
+					end = now + (millis * 1000000L / 2);
+					return true;
+				}
+				if(now < end)
+				{
+					return true;
+				}
+				warmedUp = true;
+				start = System.nanoTime();
+				end = start + (millis * 1000000L);
+				count = 0;
+				return true;
+			}
+			count++;
+			if(now < end)
+			{
+				return true;
+			}
+			end = now;
+			return false;
+		}
+
+		/**
+		 * returns the average nanoseconds per run after timing
+		 */
+		public double nanosPerOp()
+		{
+			return (end - start) / (double)count;
+		}
+	}
+
+	/**
+	 * an output stream that throws away everything written to it
+	 */
+	private static class DiscardOutputStream extends OutputStream
+	{
+		public void write(int b)
+		{
+		}
+
+		public void write(byte[] src, int off, int len)
+		{
+		}
+	}
+}
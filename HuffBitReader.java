@@ -0,0 +1,268 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * reads bits (most significant bit first) out of a 64 bit
+ * buffer that gets refilled a whole byte at a time, so the
+ * decoders can peek at several bits before deciding how many
+ * of them make up the next code
+ */
+public class HuffBitReader implements IHuffConstants
+{
+	// the most bits peekBits or readBits can give back in one call
+	public static final int MAX_PEEK_BITS = BITS_PER_INT;
+	private final int BUFFER_SIZE = 1 << 16;
+	private final int BITS_PER_LONG = 64;
+	private InputStream in;
+	private byte[] bytes;
+	// the buffer streams are read into, kept when an array is
+	// read instead so going back to a stream doesn't make another
+	private byte[] streamBytes;
+	// bytes seen as a big endian buffer to load eight at once
+	private ByteBuffer wrapped;
+	// pos short for position
+	private int pos;
+	private int limit;
+	private long bitBuffer;
+	private int bitsInBuffer;
+	// how many of the bits in the buffer are zeros tacked on
+	// after the real end of the input
+	private int padBits;
+	// how many bytes have been taken from the input so far
+	private long amtReadTotal;
+
+	/**
+	 * reads from the given stream, which should not
+	 * have had any bits read out of it yet
+	 */
+	public HuffBitReader(InputStream in)
+	{
+		streamBytes = null;
+		reset(in);
+	}
+
+	/**
+	 * reads len bytes of the given array starting at off
+	 */
+	public HuffBitReader(byte[] src, int off, int len)
+	{
+		reset(src, off, len);
+	}
+
+	/**
+	 * starts reading the given stream, which should not have had
+	 * any bits read out of it yet, dropping whatever was being read
+	 */
+	public void reset(InputStream newIn)
+	{
+		if(streamBytes == null)
+		{
+			streamBytes = new byte[BUFFER_SIZE];
+		}
+		in = newIn;
+		bytes = streamBytes;
+		wrapped = ByteBuffer.wrap(bytes);
+		pos = 0;
+		limit = 0;
+		bitBuffer = 0;
+		bitsInBuffer = 0;
+		padBits = 0;
+		amtReadTotal = 0;
+	}
+
+	/**
+	 * starts reading len bytes of the given array over
+	 * again from off, dropping any stream being read
+	 */
+	public void reset(byte[] src, int off, int len)
+	{
+		in = null;
+		bytes = src;
+		wrapped = ByteBuffer.wrap(src);
+		pos = off;
+		limit = off + len;
+		bitBuffer = 0;
+		bitsInBuffer = 0;
+		padBits = 0;
+		amtReadTotal = len;
+	}
+
+	/**
+	 * returns the next howManyBits bits without consuming them.
+	 * bits past the end of the input read as zeros
+	 */
+	public int peekBits(int howManyBits) throws IOException
+	{
+		if(bitsInBuffer < howManyBits)
+		{
+			refill();
+		}
+		return (int)((bitBuffer >>> (bitsInBuffer - howManyBits)) & ((1L << howManyBits) - 1));
+	}
+
+	/**
+	 * consumes howManyBits bits that were already looked at
+	 * with peekBits
+	 */
+	public void skipBits(int howManyBits) throws IOException
+	{
+		if(bitsInBuffer < howManyBits)
+		{
+			refill();
+		}
+		bitsInBuffer -= howManyBits;
+		if(bitsInBuffer < padBits)
+		{
+			throw new IllegalStateException("unexpected end of file.");
+		}
+	}
+
+	/**
+	 * reads and consumes the next howManyBits bits, returning
+	 * -1 like BitInputStream does if there aren't that many left
+	 */
+	public int readBits(int howManyBits) throws IOException
+	{
+		int bits = peekBits(howManyBits);
+		if(bitsInBuffer - padBits < howManyBits)
+		{
+			return -1;
+		}
+		bitsInBuffer -= howManyBits;
+		return bits;
+	}
+
+	/**
+	 * reads and consumes the next howManyBits bits, at most 63,
+	 * returning -1 if there aren't that many left
+	 */
+	public long readLongBits(int howManyBits) throws IOException
+	{
+		long value = 0;
+		while(howManyBits > 0)
+		{
+			// half an int at a time so a real value is never -1
+			int amtToRead = Math.min(howManyBits, BITS_PER_INT / 2);
+			int bits = readBits(amtToRead);
+			if(bits == -1)
+			{
+				return -1;
+			}
+			value = (value << amtToRead) | bits;
+			howManyBits -= amtToRead;
+		}
+		return value;
+	}
+
+	/**
+	 * copies up to len whole bytes into dst, returning how many
+	 * there were. the bits read so far have to end on a byte boundary
+	 */
+	public int readBytes(byte[] dst, int off, int len) throws IOException
+	{
+		if(bitsInBuffer % BITS_PER_WORD != 0)
+		{
+			throw new IllegalStateException("bytes read off a byte boundary.");
+		}
+		int amtRead = 0;
+		while( (amtRead < len) && (bitsInBuffer - padBits > 0) )
+		{
+			dst[off + amtRead] = (byte)(bitBuffer >>> (bitsInBuffer - BITS_PER_WORD));
+			bitsInBuffer -= BITS_PER_WORD;
+			amtRead++;
+		}
+		while(amtRead < len)
+		{
+			if(pos == limit)
+			{
+				fillBytes();
+				if(pos == limit)
+				{
+					break;
+				}
+			}
+			int amtToCopy = Math.min(len - amtRead, limit - pos);
+			System.arraycopy(bytes, pos, dst, off + amtRead, amtToCopy);
+			pos += amtToCopy;
+			amtRead += amtToCopy;
+		}
+		return amtRead;
+	}
+
+	/**
+	 * tops the bit buffer up to at least 57 bits, using zeros
+	 * once the input runs out. away from the end of the bytes it
+	 * loads eight at once and keeps as many whole ones as fit
+	 */
+	private void refill() throws IOException
+	{
+		if(limit - pos >= BITS_PER_LONG / BITS_PER_WORD)
+		{
+			// never 0 since refill is only called with under 33 bits left
+			int amtToKeep = (BITS_PER_LONG - 1 - bitsInBuffer) / BITS_PER_WORD;
+			int bitsToKeep = amtToKeep * BITS_PER_WORD;
+			long word = wrapped.getLong(pos);
+			bitBuffer = (bitBuffer << bitsToKeep) | (word >>> (BITS_PER_LONG - bitsToKeep));
+			bitsInBuffer += bitsToKeep;
+			pos += amtToKeep;
+			return;
+		}
+		while(bitsInBuffer <= BITS_PER_LONG - BITS_PER_WORD)
+		{
+			if(pos == limit)
+			{
+				fillBytes();
+			}
+			int curByte = 0;
+			if(pos < limit)
+			{
+				curByte = bytes[pos++] & 0xff;
+			}
+			else
+			{
+				padBits += BITS_PER_WORD;
+			}
+			bitBuffer = (bitBuffer << BITS_PER_WORD) | curByte;
+			bitsInBuffer += BITS_PER_WORD;
+		}
+	}
+
+	/**
+	 * reads the next chunk of the input into the byte buffer
+	 */
+	private void fillBytes() throws IOException
+	{
+		pos = 0;
+		limit = 0;
+		if(in != null)
+		{
+			int amtRead = in.read(bytes, 0, bytes.length);
+			if(amtRead > 0)
+			{
+				limit = amtRead;
+				amtReadTotal += amtRead;
+			}
+		}
+	}
+
+	/**
+	 * returns how many bytes have been taken from the input,
+	 * which can be ahead of the bits read since it's buffered
+	 */
+	public long getBytesRead()
+	{
+		return amtReadTotal;
+	}
+
+	/**
+	 * closes the underlying stream
+	 */
+	public void close() throws IOException
+	{
+		if(in != null)
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * packs bits (most significant bit first) into a 64 bit
+ * buffer and moves them out a 32 bit word at a time into
+ * a byte buffer, which is written to the stream in bulk.
+ * without a stream the byte buffer just grows to hold
+ * everything written
+ */
+public class HuffBitWriter implements IHuffConstants
+{
+	private final int BUFFER_SIZE = 1 << 16;
+	private final int BITS_PER_LONG = 64;
+	private final int BYTES_PER_INT = BITS_PER_INT / BITS_PER_WORD;
+	private OutputStream out;
+	private byte[] bytes;
+	// pos short for position
+	private int pos;
+	private long bitBuffer;
+	private int bitsInBuffer;
+	// how many bytes have gone out to the stream
+	private long amtWrittenTotal;
+
+	/**
+	 * writes to the given stream, which should not
+	 * have had anything written to it yet
+	 */
+	public HuffBitWriter(OutputStream out)
+	{
+		this.out = out;
+		bytes = new byte[BUFFER_SIZE];
+		pos = 0;
+		bitBuffer = 0;
+		bitsInBuffer = 0;
+		amtWrittenTotal = 0;
+	}
+
+	/**
+	 * keeps everything written in memory instead of
+	 * writing it to a stream
+	 */
+	public HuffBitWriter()
+	{
+		this(null);
+	}
+
+	/**
+	 * throws away everything written so a writer
+	 * without a stream can be used again
+	 */
+	public void reset()
+	{
+		pos = 0;
+		bitBuffer = 0;
+		bitsInBuffer = 0;
+		amtWrittenTotal = 0;
+	}
+
+	/**
+	 * throws away everything written and starts writing to the
+	 * given stream, keeping the buffer so it isn't made again
+	 */
+	public void reset(OutputStream newOut)
+	{
+		out = newOut;
+		reset();
+	}
+
+	/**
+	 * returns how many bits have been written so far, not
+	 * counting the padding flush adds to the last byte
+	 */
+	public long getBitsWritten()
+	{
+		return ((amtWrittenTotal + pos) * BITS_PER_WORD) + bitsInBuffer;
+	}
+
+	/**
+	 * returns the bytes written so far by a writer without
+	 * a stream, valid up to size() after a flush
+	 */
+	public byte[] getBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * returns how many bytes a writer without a
+	 * stream is holding after a flush
+	 */
+	public int size()
+	{
+		return pos;
+	}
+
+	/**
+	 * writes the low howManyBits bits of value, at most 32
+	 */
+	public void writeBits(int howManyBits, int value) throws IOException
+	{
+		if(bitsInBuffer + howManyBits > BITS_PER_LONG)
+		{
+			flushWord();
+		}
+		bitBuffer = (bitBuffer << howManyBits) | (value & ((1L << howManyBits) - 1));
+		bitsInBuffer += howManyBits;
+	}
+
+	/**
+	 * writes the low howManyBits bits of value, at most 63,
+	 * high half first
+	 */
+	public void writeLongBits(int howManyBits, long value) throws IOException
+	{
+		if(howManyBits > BITS_PER_INT)
+		{
+			writeBits(howManyBits - BITS_PER_INT, (int)(value >>> BITS_PER_INT));
+			howManyBits = BITS_PER_INT;
+		}
+		writeBits(howManyBits, (int)value);
+	}
+
+	/**
+	 * moves the oldest 32 bits in the bit buffer
+	 * into the byte buffer
+	 */
+	private void flushWord() throws IOException
+	{
+		if(pos + BYTES_PER_INT > bytes.length)
+		{
+			flushBytes();
+		}
+		int word = (int)(bitBuffer >>> (bitsInBuffer - BITS_PER_INT));
+		bytes[pos] = (byte)(word >>> 24);
+		bytes[pos + 1] = (byte)(word >>> 16);
+		bytes[pos + 2] = (byte)(word >>> 8);
+		bytes[pos + 3] = (byte)word;
+		pos += BYTES_PER_INT;
+		bitsInBuffer -= BITS_PER_INT;
+	}
+
+	/**
+	 * copies len whole bytes, the bits written so far
+	 * have to end on a byte boundary
+	 */
+	public void writeBytes(byte[] src, int off, int len) throws IOException
+	{
+		if(bitsInBuffer % BITS_PER_WORD != 0)
+		{
+			throw new IllegalStateException("bytes written off a byte boundary.");
+		}
+		while(bitsInBuffer > 0)
+		{
+			writeBufferedByte((int)(bitBuffer >>> (bitsInBuffer - BITS_PER_WORD)));
+			bitsInBuffer -= BITS_PER_WORD;
+		}
+		if( (out != null) && (len > bytes.length - pos) )
+		{
+			flushBytes();
+			out.write(src, off, len);
+		}
+		else
+		{
+			if(len > bytes.length - pos)
+			{
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, pos + len));
+			}
+			System.arraycopy(src, off, bytes, pos, len);
+			pos += len;
+		}
+	}
+
+	/**
+	 * adds one byte to the byte buffer
+	 */
+	private void writeBufferedByte(int value) throws IOException
+	{
+		if(pos == bytes.length)
+		{
+			flushBytes();
+		}
+		bytes[pos++] = (byte)value;
+	}
+
+	/**
+	 * writes out everything in the byte buffer, or makes
+	 * it bigger if there's no stream to write to
+	 */
+	private void flushBytes() throws IOException
+	{
+		if(out == null)
+		{
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+		}
+		else
+		{
+			out.write(bytes, 0, pos);
+			amtWrittenTotal += pos;
+			pos = 0;
+		}
+	}
+
+	/**
+	 * writes out all the bits left, padding the last
+	 * byte with zeros, so this should only be called
+	 * once everything has been written
+	 */
+	public void flush() throws IOException
+	{
+		while(bitsInBuffer >= BITS_PER_INT)
+		{
+			flushWord();
+		}
+		if(pos + BYTES_PER_INT > bytes.length)
+		{
+			flushBytes();
+		}
+		while(bitsInBuffer > 0)
+		{
+			int shift = bitsInBuffer - BITS_PER_WORD;
+			if(shift >= 0)
+			{
+				bytes[pos++] = (byte)(bitBuffer >>> shift);
+			}
+			else
+			{
+				bytes[pos++] = (byte)(bitBuffer << -shift);
+			}
+			bitsInBuffer -= Math.min(bitsInBuffer, BITS_PER_WORD);
+		}
+		bitBuffer = 0;
+		if(out != null)
+		{
+			flushBytes();
+			out.flush();
+		}
+	}
+
+	/**
+	 * flushes everything left and closes the underlying stream
+	 */
+	public void close() throws IOException
+	{
+		flush();
+		if(out != null)
+		{
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,526 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * encodes and decodes single blocks of the block format. each
+ * block gets its own tree, stored as canonical code lengths ahead
+ * of its codes, and knows its own length so it needs no pseudo eof.
+ * all the scratch space is kept between blocks so one codec can
+ * work through any number of blocks without making new tables.
+ * interleaved blocks split their bytes into four runs that are
+ * encoded as separate streams after a small jump table of where
+ * they start, so the decoder can work on all four at once instead
+ * of waiting on each code to find where the next one starts.
+ * with an lz level set, or order-1 context codes turned on, every
+ * block is written whichever way comes out smallest. a block none of
+ * the codes make smaller is stored as it is, so a block never takes
+ * more than its own length, and long blocks whose sample already
+ * looks like random bytes are stored without being counted in full
+ */
+public class HuffBlockCodec implements IHuffConstants
+{
+	// the type byte at the start of every block
+	public static final int BLOCK_END = 0;
+	public static final int BLOCK_HUFFMAN = 1;
+	public static final int BLOCK_HUFFMAN_INTERLEAVED = 2;
+	public static final int BLOCK_LZ77 = 3;
+	public static final int BLOCK_CONTEXT = 4;
+	public static final int BLOCK_STORED = 5;
+	// how many streams an interleaved block is split into
+	public static final int NUM_STREAMS = 4;
+	// the jump table holds the size of every stream but the last
+	public static final int JUMP_TABLE_BITS = (NUM_STREAMS - 1) * BITS_PER_INT;
+	// shorter blocks aren't worth the jump table
+	public static final int MIN_INTERLEAVED_LENGTH = 256;
+	// bits in the header of a block: the type, the original
+	// length and the length of the encoded payload
+	public static final int BLOCK_HEADER_BITS = BITS_PER_WORD + BITS_PER_INT + BITS_PER_INT;
+	// blocks bigger than this could get codes too long for the
+	// canonical format on very skewed data
+	public static final int MAX_BLOCK_SIZE = 1 << 22;
+	// blocks shorter than this decode with a smaller table, since
+	// filling a full one costs more than the bytes it speeds up
+	public static final int SMALL_BLOCK_LENGTH = 1 << 15;
+	public static final int SMALL_TABLE_BITS = 9;
+	// blocks at least this long have a sample checked before they're
+	// counted, the first SAMPLE_RUN bytes of every SAMPLE_STRIDE
+	public static final int MIN_SAMPLED_LENGTH = 1 << 16;
+	private static final int SAMPLE_RUN = 1 << 8;
+	private static final int SAMPLE_STRIDE = 1 << 12;
+	// a sample with more bits a byte than this is taken as random. a
+	// sample of random bytes comes out a bit under 8, and data above
+	// this saves at most a percent or so with a huffman code
+	private static final double MAX_SAMPLE_ENTROPY = 7.9;
+	private long[] counts;
+	private int[] codeLengths;
+	private int[] codeBits;
+	private HuffmanTreeBuilder builder;
+	private HuffBitWriter writer;
+	private HuffBitReader reader;
+	private HuffDecodeTable decodeTable;
+	private HuffDecodeTable smallDecodeTable;
+	// how blocks are encoded
+	private HuffBlockOptions options;
+	// the type of the last block encoded
+	private int blockType;
+	// null until an lz level is set or an lz77 block is decoded
+	private HuffLzCodec lzCodec;
+	// null until context codes are turned on or a context block is decoded
+	private HuffContextCodec contextCodec;
+	private HuffBitReader[] streamReaders;
+	// where each stream is in the payload and where its bytes go
+	private int[] srcStarts;
+	private int[] srcEnds;
+	private int[] streamStarts;
+	private int[] streamEnds;
+	// the last block stored
+	private byte[] stored;
+
+	/**
+	 * initializes the scratch space
+	 */
+	public HuffBlockCodec()
+	{
+		counts = new long[ALPH_SIZE];
+		codeLengths = new int[ALPH_SIZE];
+		codeBits = new int[ALPH_SIZE];
+		builder = new HuffmanTreeBuilder();
+		writer = new HuffBitWriter();
+		reader = new HuffBitReader(new byte[0], 0, 0);
+		decodeTable = new HuffDecodeTable();
+		smallDecodeTable = new HuffDecodeTable(SMALL_TABLE_BITS);
+		options = HuffBlockOptions.DEFAULT;
+		blockType = BLOCK_HUFFMAN;
+		lzCodec = null;
+		contextCodec = null;
+		streamReaders = new HuffBitReader[NUM_STREAMS];
+		for(int i = 0; i < NUM_STREAMS; i++)
+		{
+			streamReaders[i] = new HuffBitReader(new byte[0], 0, 0);
+		}
+		srcStarts = new int[NUM_STREAMS];
+		srcEnds = new int[NUM_STREAMS];
+		streamStarts = new int[NUM_STREAMS];
+		streamEnds = new int[NUM_STREAMS];
+		stored = new byte[0];
+	}
+
+	/**
+	 * sets how blocks are encoded from the next one on
+	 */
+	public void setOptions(HuffBlockOptions options)
+	{
+		this.options = options;
+		if(options.getLzLevel() != 0)
+		{
+			getLzCodec().setLevel(options.getLzLevel());
+		}
+		if(lzCodec != null)
+		{
+			lzCodec.setMaxCodeLength(options.getMaxCodeLength());
+		}
+		if(options.isContextModeling())
+		{
+			getContextCodec();
+		}
+		if(contextCodec != null)
+		{
+			contextCodec.setMaxCodeLength(options.getMaxCodeLength());
+		}
+	}
+
+	/**
+	 * returns the options blocks are encoded with
+	 */
+	public HuffBlockOptions getOptions()
+	{
+		return options;
+	}
+
+	/**
+	 * returns the type of the last block encoded
+	 */
+	public int getBlockType()
+	{
+		return blockType;
+	}
+
+	/**
+	 * returns the context codec, making it the first time
+	 */
+	private HuffContextCodec getContextCodec()
+	{
+		if(contextCodec == null)
+		{
+			contextCodec = new HuffContextCodec();
+			contextCodec.setMaxCodeLength(options.getMaxCodeLength());
+		}
+		return contextCodec;
+	}
+
+	/**
+	 * returns the lz77 codec, making it the first time
+	 */
+	private HuffLzCodec getLzCodec()
+	{
+		if(lzCodec == null)
+		{
+			lzCodec = new HuffLzCodec(HuffLzCodec.MIN_LEVEL);
+			lzCodec.setMaxCodeLength(options.getMaxCodeLength());
+		}
+		return lzCodec;
+	}
+
+	/**
+	 * returns the most bytes encodeBlock can return for a block of
+	 * the given length, which is the length itself since a block is
+	 * stored whenever every other type comes out bigger
+	 */
+	public static int maxEncodedSize(int rawLength)
+	{
+		return rawLength;
+	}
+
+	/**
+	 * encodes len bytes of src starting at off into the payload
+	 * of a block, returning its size. the payload is in
+	 * getPayload() until the next call
+	 */
+	public int encodeBlock(byte[] src, int off, int len) throws IOException
+	{
+		if(len > MAX_BLOCK_SIZE)
+		{
+			throw new IllegalArgumentException("block too big.");
+		}
+		// only a plain huffman code is bound by the counts of single
+		// bytes, lz77 and context codes can still shrink random looking ones
+		if( (len >= MIN_SAMPLED_LENGTH) && (options.getLzLevel() == 0)
+			&& !options.isContextModeling()
+			&& (sampleEntropy(src, off, len) > MAX_SAMPLE_ENTROPY) )
+		{
+			return storeBlock(src, off, len);
+		}
+		Arrays.fill(counts, 0);
+		HuffHistogram.countRange(src, off, len, counts);
+		makeCodes();
+		long bestBits = (long)len * BITS_PER_WORD;
+		int bestType = BLOCK_STORED;
+		int bestSize = len;
+		long huffmanBits = plainBits(len);
+		if(huffmanBits < bestBits)
+		{
+			bestBits = huffmanBits;
+			bestType = BLOCK_HUFFMAN;
+			bestSize = 0;
+		}
+		if(options.getLzLevel() != 0)
+		{
+			int lzSize = lzCodec.encodeBlock(src, off, len);
+			if((long)lzSize * BITS_PER_WORD < bestBits)
+			{
+				bestBits = (long)lzSize * BITS_PER_WORD;
+				bestType = BLOCK_LZ77;
+				bestSize = lzSize;
+			}
+		}
+		if(options.isContextModeling())
+		{
+			int contextSize = contextCodec.encodeBlock(src, off, len);
+			if((long)contextSize * BITS_PER_WORD < bestBits)
+			{
+				bestType = BLOCK_CONTEXT;
+				bestSize = contextSize;
+			}
+		}
+		if(bestType == BLOCK_STORED)
+		{
+			return storeBlock(src, off, len);
+		}
+		if(bestType != BLOCK_HUFFMAN)
+		{
+			blockType = bestType;
+			return bestSize;
+		}
+		writer.reset();
+		HuffCanonicalCodes.writeLengths(writer, codeLengths);
+		if( options.isInterleaved() && (len >= MIN_INTERLEAVED_LENGTH) )
+		{
+			blockType = BLOCK_HUFFMAN_INTERLEAVED;
+			encodeStreams(src, off, len);
+		}
+		else
+		{
+			blockType = BLOCK_HUFFMAN;
+			writeCodes(src, off, off + len);
+		}
+		writer.flush();
+		// plainBits leaves out the padding after the lengths
+		if(writer.size() > len)
+		{
+			return storeBlock(src, off, len);
+		}
+		return writer.size();
+	}
+
+	/**
+	 * copies len bytes of src starting at off into
+	 * the payload of a stored block, returning its size
+	 */
+	private int storeBlock(byte[] src, int off, int len)
+	{
+		if(stored.length < len)
+		{
+			stored = new byte[Math.max(len, Math.min(MAX_BLOCK_SIZE, stored.length * 2))];
+		}
+		System.arraycopy(src, off, stored, 0, len);
+		blockType = BLOCK_STORED;
+		return len;
+	}
+
+	/**
+	 * counts a sample of len bytes of src starting at off into
+	 * counts and returns how many bits a byte it would take at best
+	 * with a code made for it
+	 */
+	private double sampleEntropy(byte[] src, int off, int len)
+	{
+		Arrays.fill(counts, 0);
+		long sampleSize = 0;
+		for(int start = off; start < off + len; start += SAMPLE_STRIDE)
+		{
+			int end = Math.min(off + len, start + SAMPLE_RUN);
+			for(int i = start; i < end; i++)
+			{
+				counts[src[i] & 0xff]++;
+			}
+			sampleSize += end - start;
+		}
+		double bits = 0;
+		for(int i = 0; i < ALPH_SIZE; i++)
+		{
+			if(counts[i] != 0)
+			{
+				bits += counts[i] * Math.log((double)sampleSize / counts[i]);
+			}
+		}
+		return bits / Math.log(2) / sampleSize;
+	}
+
+	/**
+	 * writes the jump table and the four streams after the lengths,
+	 * each stream starting on a byte boundary. the table is written
+	 * as zeros first and filled in once the sizes are known
+	 */
+	private void encodeStreams(byte[] src, int off, int len) throws IOException
+	{
+		writer.flush();
+		int jumpTableStart = writer.size();
+		for(int i = 0; i < NUM_STREAMS - 1; i++)
+		{
+			writer.writeBits(BITS_PER_INT, 0);
+		}
+		int streamStart = jumpTableStart + (JUMP_TABLE_BITS / BITS_PER_WORD);
+		int streamLength = streamLength(len);
+		for(int i = 0; i < NUM_STREAMS; i++)
+		{
+			int from = off + Math.min(len, i * streamLength);
+			writeCodes(src, from, off + Math.min(len, (i + 1) * streamLength));
+			writer.flush();
+			if(i < NUM_STREAMS - 1)
+			{
+				int streamSize = writer.size() - streamStart;
+				byte[] bytes = writer.getBytes();
+				int entry = jumpTableStart + (i * BITS_PER_INT / BITS_PER_WORD);
+				for(int j = 0; j < BITS_PER_INT / BITS_PER_WORD; j++)
+				{
+					bytes[entry + j] = (byte)(streamSize >>> (BITS_PER_INT - ((j + 1) * BITS_PER_WORD)));
+				}
+			}
+			streamStart = writer.size();
+		}
+	}
+
+	/**
+	 * returns about how many bits the current codes take
+	 * for a plain block of the given length
+	 */
+	private long plainBits(int len)
+	{
+		long bits = HuffCanonicalCodes.headerBits(codeLengths);
+		for(int i = 0; i < ALPH_SIZE; i++)
+		{
+			bits += counts[i] * codeLengths[i];
+		}
+		if( options.isInterleaved() && (len >= MIN_INTERLEAVED_LENGTH) )
+		{
+			bits += JUMP_TABLE_BITS + (NUM_STREAMS * BITS_PER_WORD);
+		}
+		return bits;
+	}
+
+	/**
+	 * writes the codes for src from start up to end
+	 */
+	private void writeCodes(byte[] src, int start, int end) throws IOException
+	{
+		for(int i = start; i < end; i++)
+		{
+			int curBits = src[i] & 0xff;
+			writer.writeBits(codeLengths[curBits], codeBits[curBits]);
+		}
+	}
+
+	/**
+	 * returns how many bytes each stream of an interleaved block
+	 * of the given length gets, the last one getting what's left
+	 */
+	private static int streamLength(int rawLength)
+	{
+		return (rawLength + NUM_STREAMS - 1) / NUM_STREAMS;
+	}
+
+	/**
+	 * builds canonical codes for the current counts
+	 */
+	private void makeCodes()
+	{
+		makeCodes(builder, counts, options.getMaxCodeLength(), codeLengths, codeBits);
+	}
+
+	/**
+	 * builds canonical codes for the given counts of any size of
+	 * alphabet, none longer than maxCodeLength unless it's 0
+	 */
+	public static void makeCodes(HuffmanTreeBuilder builder, long[] counts, int maxCodeLength,
+		int[] codeLengths, int[] codeBits)
+	{
+		Arrays.fill(codeLengths, 0);
+		builder.getCodeLengths(builder.buildWithHeap(counts), codeLengths);
+		if(builder.getNumLeaves() == 1)
+		{
+			// a lone value still needs a code with some bits in it
+			for(int i = 0; i < counts.length; i++)
+			{
+				if(counts[i] != 0)
+				{
+					codeLengths[i] = 1;
+				}
+			}
+		}
+		if( (maxCodeLength != 0) && (HuffCanonicalCodes.getMaxLength(codeLengths) > maxCodeLength) )
+		{
+			HuffLengthLimiter.limitLengths(counts, maxCodeLength, codeLengths);
+		}
+		if(HuffCanonicalCodes.getMaxLength(codeLengths) > HuffCanonicalCodes.MAX_CODE_LENGTH)
+		{
+			throw new IllegalStateException("codes too long for the canonical format.");
+		}
+		HuffCanonicalCodes.assignCodes(codeLengths, codeBits);
+	}
+
+	/**
+	 * returns the array holding the last payload encoded
+	 */
+	public byte[] getPayload()
+	{
+		if(blockType == BLOCK_LZ77)
+		{
+			return lzCodec.getPayload();
+		}
+		if(blockType == BLOCK_CONTEXT)
+		{
+			return contextCodec.getPayload();
+		}
+		if(blockType == BLOCK_STORED)
+		{
+			return stored;
+		}
+		return writer.getBytes();
+	}
+
+	/**
+	 * returns if the given block type is one decodeBlock can decode
+	 */
+	public static boolean isBlockType(int blockType)
+	{
+		return (blockType == BLOCK_HUFFMAN) || (blockType == BLOCK_HUFFMAN_INTERLEAVED)
+			|| (blockType == BLOCK_LZ77) || (blockType == BLOCK_CONTEXT)
+			|| (blockType == BLOCK_STORED);
+	}
+
+	/**
+	 * decodes a payload of len bytes starting at off in src back
+	 * into the rawLength bytes it was made from, starting at dstOff
+	 */
+	public void decodeBlock(int blockType, byte[] src, int off, int len, byte[] dst, int dstOff,
+		int rawLength) throws IOException
+	{
+		if(blockType == BLOCK_LZ77)
+		{
+			getLzCodec().decodeBlock(src, off, len, dst, dstOff, rawLength);
+			return;
+		}
+		if(blockType == BLOCK_CONTEXT)
+		{
+			getContextCodec().decodeBlock(src, off, len, dst, dstOff, rawLength);
+			return;
+		}
+		if(blockType == BLOCK_STORED)
+		{
+			if(len != rawLength)
+			{
+				throw new IllegalStateException("invalid block header.");
+			}
+			System.arraycopy(src, off, dst, dstOff, rawLength);
+			return;
+		}
+		reader.reset(src, off, len);
+		HuffCanonicalCodes.readLengths(reader, codeLengths);
+		HuffDecodeTable table = (rawLength < SMALL_BLOCK_LENGTH) ? smallDecodeTable : decodeTable;
+		table.build(codeLengths);
+		if(blockType == BLOCK_HUFFMAN_INTERLEAVED)
+		{
+			decodeStreams(table, src, off, len, dst, dstOff, rawLength);
+		}
+		else
+		{
+			// the block's codes only cover bytes, so it can't stop early
+			table.decodeBytes(reader, dst, dstOff, rawLength);
+		}
+	}
+
+	/**
+	 * finds each stream of an interleaved block with the
+	 * jump table and decodes all four together with the given table
+	 */
+	private void decodeStreams(HuffDecodeTable table, byte[] src, int off, int len, byte[] dst,
+		int dstOff, int rawLength) throws IOException
+	{
+		int jumpTableStart = (HuffCanonicalCodes.headerBits(codeLengths) + BITS_PER_WORD - 1) / BITS_PER_WORD;
+		int streamStart = jumpTableStart + (JUMP_TABLE_BITS / BITS_PER_WORD);
+		if(streamStart > len)
+		{
+			throw new IllegalStateException("invalid block header.");
+		}
+		reader.reset(src, off + jumpTableStart, JUMP_TABLE_BITS / BITS_PER_WORD);
+		int streamLength = streamLength(rawLength);
+		for(int i = 0; i < NUM_STREAMS; i++)
+		{
+			int streamSize = len - streamStart;
+			if(i < NUM_STREAMS - 1)
+			{
+				streamSize = reader.readBits(BITS_PER_INT);
+			}
+			if( (streamSize < 0) || (streamSize > len - streamStart) )
+			{
+				throw new IllegalStateException("invalid jump table.");
+			}
+			srcStarts[i] = off + streamStart;
+			srcEnds[i] = off + streamStart + streamSize;
+			streamStarts[i] = dstOff + Math.min(rawLength, i * streamLength);
+			streamEnds[i] = dstOff + Math.min(rawLength, (i + 1) * streamLength);
+			streamStart += streamSize;
+		}
+		table.decodeStreams(src, srcStarts, srcEnds, streamReaders, dst, streamStarts, streamEnds);
+	}
+}
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * compresses in a single pass by cutting the input into blocks
+ * and giving every block its own tree. the input never has to be
+ * read twice, so pipes and sockets work, and memory use stays at
+ * about two blocks no matter how big the input is
+ */
+public class HuffBlockCompressor implements IHuffFormats
+{
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	public static final int MIN_BLOCK_SIZE = 1 << 10;
+	private int blockSize;
+	private byte[] block;
+	private HuffBlockCodec codec;
+	// kept between calls so its buffer is only made once
+	private HuffBitWriter outStream;
+	// whether a block index footer goes after the end block
+	private boolean indexed;
+	// how many bytes the last compress call read
+	private long amtReadTotal;
+
+	/**
+	 * initializes the instance variables for blocks
+	 * of DEFAULT_BLOCK_SIZE bytes
+	 */
+	public HuffBlockCompressor()
+	{
+		this(DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * initializes the instance variables for blocks of the given
+	 * size, anywhere from MIN_BLOCK_SIZE to HuffBlockCodec.MAX_BLOCK_SIZE
+	 */
+	public HuffBlockCompressor(int blockSize)
+	{
+		this(blockSize, false);
+	}
+
+	/**
+	 * initializes the instance variables for blocks of the given size,
+	 * writing a block index footer if indexed is true
+	 */
+	public HuffBlockCompressor(int blockSize, boolean indexed)
+	{
+		if( (blockSize < MIN_BLOCK_SIZE) || (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+		{
+			throw new IllegalArgumentException("invalid block size given.");
+		}
+		this.blockSize = blockSize;
+		block = new byte[blockSize];
+		codec = new HuffBlockCodec();
+		outStream = new HuffBitWriter();
+		this.indexed = indexed;
+	}
+
+	/**
+	 * compresses everything in the input to the output and
+	 * returns the number of bits written
+	 */
+	public long compress(InputStream in, OutputStream out) throws IOException
+	{
+		outStream.reset(out);
+		HuffBlockIndex index = new HuffBlockIndex();
+		long bitsWritten = writeStreamHeader(outStream, indexed ? STORE_INDEXED_BLOCKS : STORE_BLOCKS,
+			blockSize);
+		amtReadTotal = 0;
+		int amtRead = readBlock(in, block);
+		while(amtRead > 0)
+		{
+			if(indexed)
+			{
+				index.add(bitsWritten / BITS_PER_WORD, amtReadTotal, amtRead);
+			}
+			int payloadSize = codec.encodeBlock(block, 0, amtRead);
+			bitsWritten += writeBlock(outStream, codec.getBlockType(), amtRead,
+				codec.getPayload(), payloadSize);
+			amtReadTotal += amtRead;
+			amtRead = readBlock(in, block);
+		}
+		outStream.writeBits(BITS_PER_WORD, HuffBlockCodec.BLOCK_END);
+		bitsWritten += BITS_PER_WORD;
+		if(indexed)
+		{
+			bitsWritten += index.write(outStream, bitsWritten / BITS_PER_WORD);
+		}
+		in.close();
+		outStream.close();
+		// so the finished stream isn't held on to
+		outStream.reset(null);
+		return bitsWritten;
+	}
+
+	/**
+	 * sets how blocks are encoded
+	 */
+	public void setOptions(HuffBlockOptions options)
+	{
+		codec.setOptions(options);
+	}
+
+	/**
+	 * returns how many bytes the last compress call read
+	 */
+	public long getBytesRead()
+	{
+		return amtReadTotal;
+	}
+
+	/**
+	 * writes the magic number, the header format and the block
+	 * size, returning the number of bits written
+	 */
+	public static int writeStreamHeader(HuffBitWriter outStream, int headerFormat, int blockSize)
+		throws IOException
+	{
+		outStream.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+		outStream.writeBits(BITS_PER_INT, headerFormat);
+		outStream.writeBits(BITS_PER_INT, blockSize);
+		return BITS_PER_INT * 3;
+	}
+
+	/**
+	 * writes one block with its header, returning
+	 * the number of bits written
+	 */
+	public static int writeBlock(HuffBitWriter outStream, int blockType, int rawLength,
+		byte[] payload, int payloadSize) throws IOException
+	{
+		outStream.writeBits(BITS_PER_WORD, blockType);
+		outStream.writeBits(BITS_PER_INT, rawLength);
+		outStream.writeBits(BITS_PER_INT, payloadSize);
+		outStream.writeBytes(payload, 0, payloadSize);
+		return HuffBlockCodec.BLOCK_HEADER_BITS + (payloadSize * BITS_PER_WORD);
+	}
+
+	/**
+	 * fills the given block from the input, returning how many
+	 * bytes were read, which is less than a full block only
+	 * at the end of the input
+	 */
+	public static int readBlock(InputStream in, byte[] block) throws IOException
+	{
+		int amtRead = 0;
+		while(amtRead < block.length)
+		{
+			int curAmt = in.read(block, amtRead, block.length - amtRead);
+			if(curAmt == -1)
+			{
+				return amtRead;
+			}
+			amtRead += curAmt;
+		}
+		return amtRead;
+	}
+}
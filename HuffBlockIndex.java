@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+/**
+ * the block index footer of the indexed block format. for every
+ * block it records where the block starts in the compressed file,
+ * where its data starts in the original file and how long that
+ * data is. a fixed size trailer at the very end of the file says
+ * where the footer starts so a reader can find it by seeking
+ */
+public class HuffBlockIndex implements IHuffConstants
+{
+	// bytes in each entry: two offsets and a length
+	public static final int ENTRY_SIZE = 8 + 8 + 4;
+	// bytes in the trailer: the number of blocks, the
+	// offset of the footer and the magic number
+	public static final int TRAILER_SIZE = 4 + 8 + 4;
+	private long[] compressedOffsets;
+	private long[] uncompressedOffsets;
+	private int[] rawLengths;
+	private int numBlocks;
+
+	/**
+	 * makes an empty index
+	 */
+	public HuffBlockIndex()
+	{
+		compressedOffsets = new long[16];
+		uncompressedOffsets = new long[16];
+		rawLengths = new int[16];
+		numBlocks = 0;
+	}
+
+	/**
+	 * adds the next block to the end of the index
+	 */
+	public void add(long compressedOffset, long uncompressedOffset, int rawLength)
+	{
+		if(numBlocks == rawLengths.length)
+		{
+			compressedOffsets = Arrays.copyOf(compressedOffsets, numBlocks * 2);
+			uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, numBlocks * 2);
+			rawLengths = Arrays.copyOf(rawLengths, numBlocks * 2);
+		}
+		compressedOffsets[numBlocks] = compressedOffset;
+		uncompressedOffsets[numBlocks] = uncompressedOffset;
+		rawLengths[numBlocks] = rawLength;
+		numBlocks++;
+	}
+
+	/**
+	 * writes out the footer and trailer, footerOffset being the byte
+	 * offset they start at, and returns the number of bits written
+	 */
+	public long write(HuffBitWriter outStream, long footerOffset) throws IOException
+	{
+		for(int i = 0; i < numBlocks; i++)
+		{
+			writeLong(outStream, compressedOffsets[i]);
+			writeLong(outStream, uncompressedOffsets[i]);
+			outStream.writeBits(BITS_PER_INT, rawLengths[i]);
+		}
+		outStream.writeBits(BITS_PER_INT, numBlocks);
+		writeLong(outStream, footerOffset);
+		outStream.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+		return ((long)numBlocks * ENTRY_SIZE + TRAILER_SIZE) * BITS_PER_WORD;
+	}
+
+	/**
+	 * writes the given long as two ints, high half first
+	 */
+	private void writeLong(HuffBitWriter outStream, long value) throws IOException
+	{
+		outStream.writeBits(BITS_PER_INT, (int)(value >>> BITS_PER_INT));
+		outStream.writeBits(BITS_PER_INT, (int)value);
+	}
+
+	/**
+	 * reads the index from the end of an indexed file
+	 */
+	public static HuffBlockIndex read(SeekableByteChannel channel) throws IOException
+	{
+		long fileSize = channel.size();
+		if(fileSize < TRAILER_SIZE)
+		{
+			throw new IllegalStateException("file has no block index.");
+		}
+		ByteBuffer trailer = readFully(channel, fileSize - TRAILER_SIZE, TRAILER_SIZE);
+		int numBlocks = trailer.getInt();
+		long footerOffset = trailer.getLong();
+		if( (trailer.getInt() != MAGIC_NUMBER) || (numBlocks < 0) || (footerOffset < 0)
+			|| (footerOffset + ((long)numBlocks * ENTRY_SIZE) != fileSize - TRAILER_SIZE) )
+		{
+			throw new IllegalStateException("file has no block index.");
+		}
+		HuffBlockIndex index = new HuffBlockIndex();
+		ByteBuffer footer = readFully(channel, footerOffset, numBlocks * ENTRY_SIZE);
+		for(int i = 0; i < numBlocks; i++)
+		{
+			index.add(footer.getLong(), footer.getLong(), footer.getInt());
+		}
+		return index;
+	}
+
+	/**
+	 * reads len bytes starting at the given position
+	 */
+	public static ByteBuffer readFully(SeekableByteChannel channel, long position, int len)
+		throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(len);
+		channel.position(position);
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer) == -1)
+			{
+				throw new IllegalStateException("unexpected end of file.");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * returns the block holding the byte at the given offset of
+	 * the original data, or -1 if it's past the end
+	 */
+	public int findBlock(long uncompressedOffset)
+	{
+		int low = 0;
+		int high = numBlocks - 1;
+		while(low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			if(uncompressedOffset < uncompressedOffsets[mid])
+			{
+				high = mid - 1;
+			}
+			else if(uncompressedOffset >= uncompressedOffsets[mid] + rawLengths[mid])
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * returns the number of blocks in the index
+	 */
+	public int getNumBlocks()
+	{
+		return numBlocks;
+	}
+
+	/**
+	 * returns the byte offset of the given block in the compressed file
+	 */
+	public long getCompressedOffset(int block)
+	{
+		return compressedOffsets[block];
+	}
+
+	/**
+	 * returns the byte offset of the given block's data in the original file
+	 */
+	public long getUncompressedOffset(int block)
+	{
+		return uncompressedOffsets[block];
+	}
+
+	/**
+	 * returns the length of the given block's data
+	 */
+	public int getRawLength(int block)
+	{
+		return rawLengths[block];
+	}
+
+	/**
+	 * returns the length of the original file
+	 */
+	public long getUncompressedLength()
+	{
+		if(numBlocks == 0)
+		{
+			return 0;
+		}
+		return uncompressedOffsets[numBlocks - 1] + rawLengths[numBlocks - 1];
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * the settings blocks are encoded with: how long the codes can get,
+ * whether blocks are split into interleaved streams, the lz77 effort
+ * level and whether order-1 context codes are tried. never changed
+ * once it's made, so one can be handed to any number of codecs and
+ * threads. each with method returns a copy with one setting changed,
+ * checked as it's made, so every options object is a valid one
+ */
+public class HuffBlockOptions
+{
+	// plain huffman blocks with no limit on the code lengths
+	public static final HuffBlockOptions DEFAULT = new HuffBlockOptions(0, false, 0, false);
+	private final int maxCodeLength;
+	private final boolean interleaved;
+	private final int lzLevel;
+	private final boolean contextModeling;
+
+	/**
+	 * makes options with the given settings, which have been checked
+	 */
+	private HuffBlockOptions(int maxCodeLength, boolean interleaved, int lzLevel,
+		boolean contextModeling)
+	{
+		this.maxCodeLength = maxCodeLength;
+		this.interleaved = interleaved;
+		this.lzLevel = lzLevel;
+		this.contextModeling = contextModeling;
+	}
+
+	/**
+	 * returns these options with the codes of each block capped
+	 * at limit bits, up to HuffCanonicalCodes.MAX_CODE_LENGTH,
+	 * or 0 for no limit
+	 */
+	public HuffBlockOptions withMaxCodeLength(int limit)
+	{
+		if( (limit < 0) || (limit > HuffCanonicalCodes.MAX_CODE_LENGTH) )
+		{
+			throw new IllegalArgumentException("invalid max code length given.");
+		}
+		return new HuffBlockOptions(limit, interleaved, lzLevel, contextModeling);
+	}
+
+	/**
+	 * returns these options with blocks of at least
+	 * HuffBlockCodec.MIN_INTERLEAVED_LENGTH bytes split into
+	 * interleaved streams that decode faster if interleaved is true
+	 */
+	public HuffBlockOptions withInterleaved(boolean interleaved)
+	{
+		return new HuffBlockOptions(maxCodeLength, interleaved, lzLevel, contextModeling);
+	}
+
+	/**
+	 * returns these options with blocks tried with lz77 at the given
+	 * effort level, from HuffLzCodec.MIN_LEVEL to HuffLzCodec.MAX_LEVEL,
+	 * or 0 for no lz77 blocks
+	 */
+	public HuffBlockOptions withLzLevel(int level)
+	{
+		if( (level != 0) && ((level < HuffLzCodec.MIN_LEVEL) || (level > HuffLzCodec.MAX_LEVEL)) )
+		{
+			throw new IllegalArgumentException("invalid lz level given.");
+		}
+		return new HuffBlockOptions(maxCodeLength, interleaved, level, contextModeling);
+	}
+
+	/**
+	 * returns these options with blocks tried with order-1
+	 * context codes if contextModeling is true
+	 */
+	public HuffBlockOptions withContextModeling(boolean contextModeling)
+	{
+		return new HuffBlockOptions(maxCodeLength, interleaved, lzLevel, contextModeling);
+	}
+
+	/**
+	 * returns the longest code allowed, 0 for no limit
+	 */
+	public int getMaxCodeLength()
+	{
+		return maxCodeLength;
+	}
+
+	/**
+	 * returns whether long enough blocks are split into streams
+	 */
+	public boolean isInterleaved()
+	{
+		return interleaved;
+	}
+
+	/**
+	 * returns the lz77 effort level, 0 when blocks aren't tried with lz77
+	 */
+	public int getLzLevel()
+	{
+		return lzLevel;
+	}
+
+	/**
+	 * returns whether blocks are tried with order-1 context codes
+	 */
+	public boolean isContextModeling()
+	{
+		return contextModeling;
+	}
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * the hand offs between the stages of a block pipeline, for a fixed
+ * ring of slots made ahead of time by whoever uses it. one thread
+ * fills slots in order, any number of workers each take the next
+ * filled slot and process it, and one thread drains the processed
+ * slots in order, which frees them to be filled again. a stage that
+ * gets ahead waits on the one before it and the filler waits once
+ * every slot is in use, so memory stays at the size of the ring no
+ * matter how far apart the stages run. if any stage fails every
+ * other one stops waiting, and the failure is thrown on whichever
+ * thread asks for it
+ */
+public class HuffBlockRing
+{
+	private int numSlots;
+	// which slots have been processed and are waiting to be drained
+	private boolean[] processed;
+	// how many slots have ever been filled, taken by a worker and
+	// drained, the slot for the nth being n modulo numSlots
+	private long numFilled;
+	private long numTaken;
+	private long numDrained;
+	private boolean endOfInput;
+	private Throwable failure;
+
+	/**
+	 * makes a ring of the given number of slots
+	 */
+	public HuffBlockRing(int numSlots)
+	{
+		if(numSlots < 1)
+		{
+			throw new IllegalArgumentException("invalid number of slots given.");
+		}
+		this.numSlots = numSlots;
+		processed = new boolean[numSlots];
+		reset();
+	}
+
+	/**
+	 * empties the ring so it can be used for another run, which
+	 * should only be done once every stage of the last one is done
+	 */
+	public synchronized void reset()
+	{
+		for(int i = 0; i < numSlots; i++)
+		{
+			processed[i] = false;
+		}
+		numFilled = 0;
+		numTaken = 0;
+		numDrained = 0;
+		endOfInput = false;
+		failure = null;
+	}
+
+	/**
+	 * waits until the next slot in order is free and returns it,
+	 * or -1 if a stage failed
+	 */
+	public synchronized int nextToFill() throws InterruptedException
+	{
+		while( (numFilled - numDrained == numSlots) && (failure == null) )
+		{
+			wait();
+		}
+		return (failure == null) ? slotOf(numFilled) : -1;
+	}
+
+	/**
+	 * hands the slot from nextToFill to the workers
+	 */
+	public synchronized void filled()
+	{
+		numFilled++;
+		notifyAll();
+	}
+
+	/**
+	 * says no more slots are going to be filled
+	 */
+	public synchronized void endOfInput()
+	{
+		endOfInput = true;
+		notifyAll();
+	}
+
+	/**
+	 * waits for a filled slot no worker has taken and returns it,
+	 * or -1 once every slot has been taken and no more are coming
+	 * or a stage failed
+	 */
+	public synchronized int nextToProcess() throws InterruptedException
+	{
+		while( (numTaken == numFilled) && !endOfInput && (failure == null) )
+		{
+			wait();
+		}
+		if( (numTaken == numFilled) || (failure != null) )
+		{
+			return -1;
+		}
+		int slot = slotOf(numTaken);
+		numTaken++;
+		return slot;
+	}
+
+	/**
+	 * hands a slot from nextToProcess on to be drained
+	 */
+	public synchronized void processed(int slot)
+	{
+		processed[slot] = true;
+		notifyAll();
+	}
+
+	/**
+	 * waits until the next slot in order has been processed and
+	 * returns it, or -1 once every slot has been drained and no
+	 * more are coming or a stage failed
+	 */
+	public synchronized int nextToDrain() throws InterruptedException
+	{
+		int slot = slotOf(numDrained);
+		while( !processed[slot] && !(endOfInput && (numDrained == numFilled)) && (failure == null) )
+		{
+			wait();
+		}
+		return ( (failure == null) && processed[slot] ) ? slot : -1;
+	}
+
+	/**
+	 * frees the slot from nextToDrain to be filled again
+	 */
+	public synchronized void drained()
+	{
+		processed[slotOf(numDrained)] = false;
+		numDrained++;
+		notifyAll();
+	}
+
+	/**
+	 * stops every stage, keeping the first failure given
+	 */
+	public synchronized void fail(Throwable cause)
+	{
+		if(failure == null)
+		{
+			failure = cause;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * throws the failure a stage stopped the ring with, if any
+	 */
+	public synchronized void checkFailure() throws IOException
+	{
+		if(failure instanceof IOException)
+		{
+			throw (IOException)failure;
+		}
+		if(failure instanceof RuntimeException)
+		{
+			throw (RuntimeException)failure;
+		}
+		if(failure instanceof Error)
+		{
+			throw (Error)failure;
+		}
+		if(failure != null)
+		{
+			throw new IOException("pipeline stopped.", failure);
+		}
+	}
+
+	/**
+	 * waits for every stage of a run to return, so the ring and its
+	 * slots can be used again. an interrupt stops the ring instead of
+	 * the wait, since the stages still have to finish with the slots
+	 */
+	public void awaitStages(Future<?>[] stages)
+	{
+		boolean interrupted = false;
+		for(Future<?> stage: stages)
+		{
+			boolean done = false;
+			while(!done)
+			{
+				try {
+						stage.get();
+						done = true;
+				} catch (InterruptedException e) {
+					interrupted = true;
+					fail(new InterruptedIOException("interrupted while waiting on the pipeline."));
+				} catch (ExecutionException e) {
+					// the stages report what went wrong through fail
+					done = true;
+				}
+			}
+		}
+		if(interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * returns the slot the given count lands on
+	 */
+	private int slotOf(long count)
+	{
+		return (int)(count % numSlots);
+	}
+}
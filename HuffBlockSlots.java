@@ -0,0 +1,85 @@
+import java.io.IOException;
+
+/**
+ * the blocks a compressor that works on several blocks at once has
+ * in flight, each with its own input buffer and codec. the block
+ * options are passed on to every slot from here
+ */
+public class HuffBlockSlots
+{
+	private Slot[] slots;
+
+	/**
+	 * makes the given number of slots for blocks of the given size
+	 */
+	public HuffBlockSlots(int numSlots, int blockSize)
+	{
+		slots = new Slot[numSlots];
+		for(int i = 0; i < slots.length; i++)
+		{
+			slots[i] = new Slot(blockSize);
+		}
+	}
+
+	/**
+	 * returns how many slots there are
+	 */
+	public int size()
+	{
+		return slots.length;
+	}
+
+	/**
+	 * returns the slot with the given number
+	 */
+	public Slot get(int slot)
+	{
+		return slots[slot];
+	}
+
+	/**
+	 * sets how the blocks in every slot are encoded
+	 */
+	public void setOptions(HuffBlockOptions options)
+	{
+		for(int i = 0; i < slots.length; i++)
+		{
+			slots[i].codec.setOptions(options);
+		}
+	}
+
+	/**
+	 * a block's input buffer, its own codec to encode
+	 * it with, and how long it and its payload are
+	 */
+	public static class Slot
+	{
+		byte[] block;
+		HuffBlockCodec codec;
+		int rawLength;
+		int payloadSize;
+
+		public Slot(int blockSize)
+		{
+			block = new byte[blockSize];
+			codec = new HuffBlockCodec();
+		}
+
+		/**
+		 * encodes the rawLength bytes in the block
+		 */
+		public void encode() throws IOException
+		{
+			payloadSize = codec.encodeBlock(block, 0, rawLength);
+		}
+
+		/**
+		 * writes the encoded block out, returning the number of bits written
+		 */
+		public long write(HuffBitWriter outStream) throws IOException
+		{
+			return HuffBlockCompressor.writeBlock(outStream, codec.getBlockType(), rawLength,
+				codec.getPayload(), payloadSize);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * reads the blocks written by HuffBlockCompressor back one at a
+ * time, so memory use stays at about two blocks no matter how
+ * big the original data was
+ */
+public class HuffBlockUncompressor implements IHuffFormats
+{
+	private HuffBlockCodec codec;
+	private int blockSize;
+	private byte[] block;
+	private byte[] payload;
+
+	/**
+	 * initializes the instance variables, the buffers are made
+	 * once the block size has been read
+	 */
+	public HuffBlockUncompressor()
+	{
+		codec = new HuffBlockCodec();
+		blockSize = 0;
+		block = new byte[0];
+		payload = new byte[0];
+	}
+
+	/**
+	 * uncompresses every block after the header format, which
+	 * has already been read, returning the number of bits written
+	 */
+	public long uncompress(HuffBitReader inStream, OutputStream out) throws IOException
+	{
+		readBlockSize(inStream);
+		long bitCount = 0;
+		int rawLength = readNextBlock(inStream);
+		while(rawLength != -1)
+		{
+			out.write(block, 0, rawLength);
+			bitCount += (long)rawLength * BITS_PER_WORD;
+			rawLength = readNextBlock(inStream);
+		}
+		return bitCount;
+	}
+
+	/**
+	 * reads the block size that comes after the header format
+	 */
+	public void readBlockSize(HuffBitReader inStream) throws IOException
+	{
+		blockSize = inStream.readBits(BITS_PER_INT);
+		if( (blockSize < 1) || (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+		{
+			throw new IllegalStateException("invalid block size.");
+		}
+		if(block.length < blockSize)
+		{
+			block = new byte[blockSize];
+		}
+	}
+
+	/**
+	 * reads and decodes the next block into getBlock(), returning
+	 * its length, or -1 once the end block has been read
+	 */
+	public int readNextBlock(HuffBitReader inStream) throws IOException
+	{
+		int blockType = inStream.readBits(BITS_PER_WORD);
+		if(blockType == HuffBlockCodec.BLOCK_END)
+		{
+			return -1;
+		}
+		if(blockType == -1)
+		{
+			throw new IllegalStateException("unexpected end of file.");
+		}
+		if(!HuffBlockCodec.isBlockType(blockType))
+		{
+			throw new IllegalStateException("invalid block type.");
+		}
+		int rawLength = inStream.readBits(BITS_PER_INT);
+		int payloadSize = inStream.readBits(BITS_PER_INT);
+		checkBlockLengths(rawLength, payloadSize, blockSize);
+		if(payload.length < payloadSize)
+		{
+			payload = new byte[Math.max(payloadSize, payload.length * 2)];
+		}
+		if(inStream.readBytes(payload, 0, payloadSize) != payloadSize)
+		{
+			throw new IllegalStateException("unexpected end of file.");
+		}
+		codec.decodeBlock(blockType, payload, 0, payloadSize, block, 0, rawLength);
+		return rawLength;
+	}
+
+	/**
+	 * makes sure the lengths in a block header fit a stream
+	 * of the given block size before the payload is read
+	 */
+	public static void checkBlockLengths(int rawLength, int payloadSize, int blockSize)
+	{
+		if( (rawLength < 1) || (rawLength > blockSize) || (payloadSize < 0)
+			|| (payloadSize > HuffBlockCodec.maxEncodedSize(rawLength)) )
+		{
+			throw new IllegalStateException("invalid block header.");
+		}
+	}
+
+	/**
+	 * returns the array the last block was decoded into
+	 */
+	public byte[] getBlock()
+	{
+		return block;
+	}
+}
@@ -0,0 +1,335 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * compresses and uncompresses payloads that are already in memory,
+ * in heap or direct buffers, into the same block format as
+ * HuffBlockCompressor. there are no streams in between: blocks are
+ * encoded straight out of a heap buffer's array and decoded straight
+ * into one, and only direct buffers get copied through a block sized
+ * scratch array. every field outside the payloads is whole bytes,
+ * so they're put into the buffers directly
+ */
+public class HuffBufferCodec implements IHuffFormats
+{
+	private static final int BYTES_PER_INT = BITS_PER_INT / BITS_PER_WORD;
+	// the magic number, the header format and the block size
+	private static final int STREAM_HEADER_SIZE = 3 * BYTES_PER_INT;
+	private static final int BLOCK_HEADER_SIZE = HuffBlockCodec.BLOCK_HEADER_BITS / BITS_PER_WORD;
+	private int blockSize;
+	private HuffBlockCodec codec;
+	// scratch space for direct buffers, made the first time one comes up
+	private byte[] block;
+	private byte[] payload;
+
+	/**
+	 * initializes the instance variables for blocks of the given
+	 * size, anywhere from HuffBlockCompressor.MIN_BLOCK_SIZE to
+	 * HuffBlockCodec.MAX_BLOCK_SIZE
+	 */
+	public HuffBufferCodec(int blockSize)
+	{
+		if( (blockSize < HuffBlockCompressor.MIN_BLOCK_SIZE)
+			|| (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+		{
+			throw new IllegalArgumentException("invalid block size given.");
+		}
+		this.blockSize = blockSize;
+		codec = new HuffBlockCodec();
+		block = new byte[0];
+		payload = new byte[0];
+	}
+
+	/**
+	 * sets how blocks are encoded
+	 */
+	public void setOptions(HuffBlockOptions options)
+	{
+		codec.setOptions(options);
+	}
+
+	/**
+	 * returns the most bytes compressing srcLength bytes can take
+	 * with blocks of the given size, so the output can be made
+	 * before compressing
+	 */
+	public static int maxCompressedLength(int srcLength, int blockSize)
+	{
+		if(srcLength < 0)
+		{
+			throw new IllegalArgumentException("invalid length given.");
+		}
+		long numFullBlocks = srcLength / blockSize;
+		int lastBlock = srcLength % blockSize;
+		// the end block is a single byte
+		long bound = STREAM_HEADER_SIZE + 1;
+		bound += numFullBlocks * (BLOCK_HEADER_SIZE + HuffBlockCodec.maxEncodedSize(blockSize));
+		if(lastBlock > 0)
+		{
+			bound += BLOCK_HEADER_SIZE + HuffBlockCodec.maxEncodedSize(lastBlock);
+		}
+		if(bound > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("input too big for one buffer.");
+		}
+		return (int)bound;
+	}
+
+	/**
+	 * returns the most bytes compressing srcLength
+	 * bytes with this codec's block size can take
+	 */
+	public int maxCompressedLength(int srcLength)
+	{
+		return maxCompressedLength(srcLength, blockSize);
+	}
+
+	/**
+	 * compresses everything left in src into dst, moving both up
+	 * past what was used and returning how many bytes were put in
+	 * dst. dst fills up and throws BufferOverflowException only if
+	 * it has less room than maxCompressedLength says to leave
+	 */
+	public int compress(ByteBuffer src, ByteBuffer dst) throws IOException
+	{
+		int dstStart = dst.position();
+		putInt(dst, MAGIC_NUMBER);
+		putInt(dst, STORE_BLOCKS);
+		putInt(dst, blockSize);
+		while(src.hasRemaining())
+		{
+			int rawLength = Math.min(blockSize, src.remaining());
+			byte[] raw;
+			int rawOff;
+			if(src.hasArray())
+			{
+				raw = src.array();
+				rawOff = src.arrayOffset() + src.position();
+				src.position(src.position() + rawLength);
+			}
+			else
+			{
+				raw = getBlock(rawLength);
+				rawOff = 0;
+				src.get(raw, 0, rawLength);
+			}
+			int payloadSize = codec.encodeBlock(raw, rawOff, rawLength);
+			dst.put((byte)codec.getBlockType());
+			putInt(dst, rawLength);
+			putInt(dst, payloadSize);
+			dst.put(codec.getPayload(), 0, payloadSize);
+		}
+		dst.put((byte)HuffBlockCodec.BLOCK_END);
+		return dst.position() - dstStart;
+	}
+
+	/**
+	 * returns how many bytes the compressed data left in src holds
+	 * once uncompressed, found from the block headers alone without
+	 * decoding anything or moving src
+	 */
+	public static long uncompressedLength(ByteBuffer src)
+	{
+		ByteBuffer view = src.duplicate();
+		int blockSize = readStreamHeader(view);
+		long total = 0;
+		int rawLength = readBlockHeader(view, blockSize);
+		while(rawLength != -1)
+		{
+			total += rawLength;
+			skip(view, getInt(view, view.position() - BYTES_PER_INT));
+			rawLength = readBlockHeader(view, blockSize);
+		}
+		return total;
+	}
+
+	/**
+	 * uncompresses the data left in src into dst, moving both up past
+	 * what was used and returning how many bytes were put in dst.
+	 * throws BufferOverflowException if dst has less room than
+	 * uncompressedLength says the data needs
+	 */
+	public int uncompress(ByteBuffer src, ByteBuffer dst) throws IOException
+	{
+		int dstStart = dst.position();
+		int curBlockSize = readStreamHeader(src);
+		boolean indexed = getInt(src, src.position() - (2 * BYTES_PER_INT)) == STORE_INDEXED_BLOCKS;
+		int numBlocks = 0;
+		int rawLength = readBlockHeader(src, curBlockSize);
+		while(rawLength != -1)
+		{
+			int blockType = src.get(src.position() - BLOCK_HEADER_SIZE) & 0xff;
+			int payloadSize = getInt(src, src.position() - BYTES_PER_INT);
+			if(dst.remaining() < rawLength)
+			{
+				throw new BufferOverflowException();
+			}
+			byte[] coded;
+			int codedOff;
+			if(src.hasArray())
+			{
+				coded = src.array();
+				codedOff = src.arrayOffset() + src.position();
+				src.position(src.position() + payloadSize);
+			}
+			else
+			{
+				coded = getPayload(payloadSize);
+				codedOff = 0;
+				src.get(coded, 0, payloadSize);
+			}
+			if(dst.hasArray())
+			{
+				codec.decodeBlock(blockType, coded, codedOff, payloadSize, dst.array(),
+					dst.arrayOffset() + dst.position(), rawLength);
+				dst.position(dst.position() + rawLength);
+			}
+			else
+			{
+				byte[] raw = getBlock(rawLength);
+				codec.decodeBlock(blockType, coded, codedOff, payloadSize, raw, 0, rawLength);
+				dst.put(raw, 0, rawLength);
+			}
+			numBlocks++;
+			rawLength = readBlockHeader(src, curBlockSize);
+		}
+		if(indexed)
+		{
+			// the footer isn't needed to read the blocks in order
+			skip(src, (numBlocks * HuffBlockIndex.ENTRY_SIZE) + HuffBlockIndex.TRAILER_SIZE);
+		}
+		return dst.position() - dstStart;
+	}
+
+	/**
+	 * reads the magic number, header format and block size
+	 * and returns the block size
+	 */
+	private static int readStreamHeader(ByteBuffer src)
+	{
+		if( (src.remaining() < STREAM_HEADER_SIZE) || (getInt(src) != MAGIC_NUMBER) )
+		{
+			throw new IllegalArgumentException("buffer given not a huffman file.");
+		}
+		int headerFormat = getInt(src);
+		if( (headerFormat != STORE_BLOCKS) && (headerFormat != STORE_INDEXED_BLOCKS) )
+		{
+			throw new IllegalArgumentException("buffer given not in the block format.");
+		}
+		int blockSize = getInt(src);
+		if( (blockSize < 1) || (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+		{
+			throw new IllegalStateException("invalid block size.");
+		}
+		return blockSize;
+	}
+
+	/**
+	 * reads the header of the next block and checks it, returning
+	 * its length, or -1 once the end block has been read. the
+	 * payload, whose size is the int just read, is left in src
+	 */
+	private static int readBlockHeader(ByteBuffer src, int blockSize)
+	{
+		if(!src.hasRemaining())
+		{
+			throw new IllegalStateException("unexpected end of file.");
+		}
+		int blockType = src.get() & 0xff;
+		if(blockType == HuffBlockCodec.BLOCK_END)
+		{
+			return -1;
+		}
+		if(!HuffBlockCodec.isBlockType(blockType))
+		{
+			throw new IllegalStateException("invalid block type.");
+		}
+		if(src.remaining() < 2 * BYTES_PER_INT)
+		{
+			throw new IllegalStateException("unexpected end of file.");
+		}
+		int rawLength = getInt(src);
+		int payloadSize = getInt(src);
+		HuffBlockUncompressor.checkBlockLengths(rawLength, payloadSize, blockSize);
+		if(src.remaining() < payloadSize)
+		{
+			throw new IllegalStateException("unexpected end of file.");
+		}
+		return rawLength;
+	}
+
+	/**
+	 * moves src up len bytes
+	 */
+	private static void skip(ByteBuffer src, int len)
+	{
+		if(src.remaining() < len)
+		{
+			throw new IllegalStateException("unexpected end of file.");
+		}
+		src.position(src.position() + len);
+	}
+
+	/**
+	 * puts an int in most significant byte first no
+	 * matter what byte order dst was set to
+	 */
+	private static void putInt(ByteBuffer dst, int value)
+	{
+		for(int shift = BITS_PER_INT - BITS_PER_WORD; shift >= 0; shift -= BITS_PER_WORD)
+		{
+			dst.put((byte)(value >>> shift));
+		}
+	}
+
+	/**
+	 * gets an int written by putInt
+	 */
+	private static int getInt(ByteBuffer src)
+	{
+		int value = getInt(src, src.position());
+		src.position(src.position() + BYTES_PER_INT);
+		return value;
+	}
+
+	/**
+	 * gets the int written by putInt at the given index
+	 * without moving src
+	 */
+	private static int getInt(ByteBuffer src, int index)
+	{
+		int value = 0;
+		for(int i = 0; i < BYTES_PER_INT; i++)
+		{
+			value = (value << BITS_PER_WORD) | (src.get(index + i) & 0xff);
+		}
+		return value;
+	}
+
+	/**
+	 * returns the scratch block, making it bigger if it
+	 * can't hold the given number of bytes
+	 */
+	private byte[] getBlock(int len)
+	{
+		if(block.length < len)
+		{
+			block = new byte[Math.max(len, Math.min(blockSize, block.length * 2))];
+		}
+		return block;
+	}
+
+	/**
+	 * returns the scratch payload array, making it bigger
+	 * if it can't hold the given number of bytes
+	 */
+	private byte[] getPayload(int len)
+	{
+		if(payload.length < len)
+		{
+			payload = new byte[Math.max(len, payload.length * 2)];
+		}
+		return payload;
+	}
+}
@@ -0,0 +1,235 @@
+import java.io.IOException;
+
+/**
+ * canonical huffman codes, where the codes are fully decided by
+ * their lengths: shorter codes come first and codes of the same
+ * length count up in value order. that means a header only has to
+ * store the lengths, which it does with runs of zero lengths
+ * collapsed into a single count
+ */
+public class HuffCanonicalCodes
+{
+	// the longest code the canonical format allows, which is
+	// also the most bits HuffBitReader can peek at once
+	public static final int MAX_CODE_LENGTH = HuffBitReader.MAX_PEEK_BITS;
+	// bits used to store how many bits each length takes up
+	private static final int LENGTH_WIDTH_BITS = 3;
+	// bits used to store the length of a run of zero lengths, minus one
+	private static final int ZERO_RUN_BITS = 8;
+	private static final int MAX_ZERO_RUN = 1 << ZERO_RUN_BITS;
+
+	/**
+	 * fills codesOut with the canonical code for every value
+	 * with a nonzero length, right aligned in each int
+	 */
+	public static void assignCodes(int[] lengths, int[] codesOut)
+	{
+		int maxLength = getMaxLength(lengths);
+		int[] nextCode = firstCodes(lengths, maxLength);
+		for(int i = 0; i < lengths.length; i++)
+		{
+			if(lengths[i] != 0)
+			{
+				codesOut[i] = nextCode[lengths[i]];
+				nextCode[lengths[i]]++;
+			}
+		}
+	}
+
+	/**
+	 * returns the first code of each length, by index
+	 */
+	public static int[] firstCodes(int[] lengths, int maxLength)
+	{
+		int[] count = countLengths(lengths, maxLength);
+		int[] firstCode = new int[maxLength + 1];
+		int code = 0;
+		for(int len = 1; len <= maxLength; len++)
+		{
+			code = (code + count[len - 1]) << 1;
+			firstCode[len] = code;
+		}
+		return firstCode;
+	}
+
+	/**
+	 * returns how many values have each code length, by index,
+	 * not counting values with a length of zero
+	 */
+	public static int[] countLengths(int[] lengths, int maxLength)
+	{
+		int[] count = new int[maxLength + 1];
+		for(int i = 0; i < lengths.length; i++)
+		{
+			count[lengths[i]]++;
+		}
+		count[0] = 0;
+		return count;
+	}
+
+	/**
+	 * returns the longest length given
+	 */
+	public static int getMaxLength(int[] lengths)
+	{
+		int maxLength = 0;
+		for(int i = 0; i < lengths.length; i++)
+		{
+			maxLength = Math.max(maxLength, lengths[i]);
+		}
+		return maxLength;
+	}
+
+	/**
+	 * returns how many bits writeLengths will
+	 * use to store the given lengths
+	 */
+	public static int headerBits(int[] lengths)
+	{
+		int width = lengthWidth(lengths);
+		int bits = LENGTH_WIDTH_BITS;
+		int i = 0;
+		while(i < lengths.length)
+		{
+			bits += width;
+			if(lengths[i] == 0)
+			{
+				bits += ZERO_RUN_BITS;
+				i += zeroRunLength(lengths, i);
+			}
+			else
+			{
+				i++;
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * returns the most bits writeLengths can use for numValues
+	 * lengths, every one at the widest width and followed by a run
+	 */
+	public static int maxHeaderBits(int numValues)
+	{
+		int width = 1;
+		while( (1 << width) <= MAX_CODE_LENGTH )
+		{
+			width++;
+		}
+		return LENGTH_WIDTH_BITS + (numValues * (width + ZERO_RUN_BITS));
+	}
+
+	/**
+	 * writes out the given lengths, the reader has to
+	 * know how many of them there are
+	 */
+	public static void writeLengths(HuffBitWriter outStream, int[] lengths) throws IOException
+	{
+		int width = lengthWidth(lengths);
+		outStream.writeBits(LENGTH_WIDTH_BITS, width);
+		int i = 0;
+		while(i < lengths.length)
+		{
+			outStream.writeBits(width, lengths[i]);
+			if(lengths[i] == 0)
+			{
+				int run = zeroRunLength(lengths, i);
+				outStream.writeBits(ZERO_RUN_BITS, run - 1);
+				i += run;
+			}
+			else
+			{
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * reads lengths written by writeLengths into the given
+	 * array, which has to be the same size as the one written
+	 */
+	public static void readLengths(HuffBitReader inStream, int[] lengths) throws IOException
+	{
+		int width = inStream.readBits(LENGTH_WIDTH_BITS);
+		if(width < 1)
+		{
+			throw new IllegalStateException("invalid canonical header.");
+		}
+		int i = 0;
+		while(i < lengths.length)
+		{
+			int len = inStream.readBits(width);
+			if( (len == -1) || (len > MAX_CODE_LENGTH) )
+			{
+				throw new IllegalStateException("invalid canonical header.");
+			}
+			if(len == 0)
+			{
+				int run = inStream.readBits(ZERO_RUN_BITS) + 1;
+				if( (run == 0) || (i + run > lengths.length) )
+				{
+					throw new IllegalStateException("invalid canonical header.");
+				}
+				for(int j = 0; j < run; j++)
+				{
+					lengths[i + j] = 0;
+				}
+				i += run;
+			}
+			else
+			{
+				lengths[i] = len;
+				i++;
+			}
+		}
+		if(!isValidPrefixCode(lengths))
+		{
+			throw new IllegalStateException("invalid canonical header.");
+		}
+	}
+
+	/**
+	 * returns true if the lengths don't claim more codes than
+	 * there are, the kraft inequality
+	 */
+	public static boolean isValidPrefixCode(int[] lengths)
+	{
+		long total = 0;
+		for(int i = 0; i < lengths.length; i++)
+		{
+			if(lengths[i] != 0)
+			{
+				total += 1L << (MAX_CODE_LENGTH - lengths[i]);
+			}
+		}
+		return total <= (1L << MAX_CODE_LENGTH);
+	}
+
+	/**
+	 * returns the number of bits needed to store the longest length
+	 */
+	private static int lengthWidth(int[] lengths)
+	{
+		int maxLength = getMaxLength(lengths);
+		int width = 1;
+		while( (1 << width) <= maxLength )
+		{
+			width++;
+		}
+		return width;
+	}
+
+	/**
+	 * returns how many zero lengths in a row start at
+	 * the given index, up to the most one run can hold
+	 */
+	private static int zeroRunLength(int[] lengths, int start)
+	{
+		int end = start;
+		while( (end < lengths.length) && (lengths[end] == 0) && (end - start < MAX_ZERO_RUN) )
+		{
+			end++;
+		}
+		return end - start;
+	}
+}
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * an output stream that writes to a file through a large direct
+ * buffer, so the bytes go to the channel in big writes without
+ * being copied into a heap array first
+ */
+public class HuffChannelOutputStream extends OutputStream
+{
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+
+	/**
+	 * creates or truncates the given file and opens it for writing
+	 */
+	public HuffChannelOutputStream(Path path) throws IOException
+	{
+		this(FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING), DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * writes to the given channel through a direct
+	 * buffer of the given size
+	 */
+	public HuffChannelOutputStream(FileChannel channel, int bufferSize)
+	{
+		if(bufferSize < 1)
+		{
+			throw new IllegalArgumentException("invalid buffer size given.");
+		}
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	public void write(int b) throws IOException
+	{
+		if(!buffer.hasRemaining())
+		{
+			drain();
+		}
+		buffer.put((byte)b);
+	}
+
+	public void write(byte[] src, int off, int len) throws IOException
+	{
+		if( (off < 0) || (len < 0) || (off + len > src.length) )
+		{
+			throw new IndexOutOfBoundsException();
+		}
+		while(len > 0)
+		{
+			if(!buffer.hasRemaining())
+			{
+				drain();
+			}
+			int amtToCopy = Math.min(len, buffer.remaining());
+			buffer.put(src, off, amtToCopy);
+			off += amtToCopy;
+			len -= amtToCopy;
+		}
+	}
+
+	/**
+	 * writes everything in the buffer out to the channel
+	 */
+	private void drain() throws IOException
+	{
+		buffer.flip();
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	public void flush() throws IOException
+	{
+		drain();
+	}
+
+	/**
+	 * writes out whatever is left and closes the file
+	 */
+	public void close() throws IOException
+	{
+		if(channel.isOpen())
+		{
+			try {
+					drain();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
@@ -2,20 +2,32 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.TreeMap;
 
-public class HuffCompressor implements IHuffConstants
+public class HuffCompressor implements IHuffFormats
 {
 	private final int NUM_BITS_IN_LEAF = 9;
-	// orig short for original
-	private int origAmtOfBits;
-	private int newAmtOfBits;
-	// will hold either the vaule of scf or stf
+	private final int READ_BUFFER_SIZE = 1 << 16;
+	// how many bits give the width of the counts in the large counts header
+	private final int COUNT_WIDTH_BITS = 6;
+	// orig short for original, longs so big files don't overflow
+	private long origAmtOfBits;
+	private long newAmtOfBits;
+	// the frequencies of every value plus pseudo eof
+	private long[] freqs;
+	// will hold the vaule of scf, stf or canonical
 	private int headerInt;
 	private HuffmanCodeTree huffer;
+	private HuffMetricsRecorder metrics;
+	private HuffHistogram histogram;
+	// the longest code allowed, 0 for no limit
+	private int maxCodeLength;
+	// the metrics of the last compress call
+	private HuffMetrics lastMetrics;
 	
 	/**
 	 * intialzies the instance variables	
@@ -31,19 +43,95 @@ public class HuffCompressor implements IHuffConstants
 		// since neither header formats' value are -1
 		headerInt = -1;
 		huffer = new HuffmanCodeTree();
+		freqs = new long[ALPH_SIZE + 1];
+		metrics = new HuffMetricsRecorder();
+		lastMetrics = null;
+		histogram = new HuffHistogram();
+		maxCodeLength = 0;
 	}
 	
     /**
 	 * sets up all the info the program needs
-	 * to the compress the file	
+	 * to the compress the file, returning the number
+	 * of bits saved capped to fit in an int	
 	 */
-	public int preprocessCompress(BitInputStream inStream, int headerFormat) throws IOException 
+	public int preprocessCompress(InputStream inStream, int headerFormat) throws IOException 
 	{
+		return toIntBits(preprocessCompressLarge(inStream, headerFormat));
+    }
+	
+	/**
+	 * sets up all the info the program needs to compress
+	 * the file, returning the number of bits saved as a long
+	 * so it's right for files of any size	
+	 */
+	public long preprocessCompressLarge(InputStream inStream, int headerFormat) throws IOException 
+	{
+		metrics.begin();
+		long phaseStart = metrics.startPhase();
+		long[] counts = getFreqArr(inStream);
+		metrics.endPhase(HuffMetrics.HISTOGRAM, phaseStart);
+		return preprocessCounts(counts, headerFormat);
+    }
+	
+	/**
+	 * sets up all the info the program needs to compress
+	 * a file whose bytes have already been counted, counts
+	 * holding how many times each of the 256 values shows up	
+	 */
+	public long preprocessCounts(long[] counts, int headerFormat)
+	{
+		if( (maxCodeLength != 0) && ((headerFormat == STORE_COUNTS) || (headerFormat == STORE_LARGE_COUNTS)) )
+		{
+			throw new IllegalArgumentException("length limits need the tree or canonical header.");
+		}
+		long phaseStart = metrics.startPhase();
 		reset(headerFormat);
-		huffer.buildHuffmanCodeTree(getFreqArr(inStream));
+		boolean countsFitInInt = true;
+		for(int i = 0; i < ALPH_SIZE; i++)
+		{
+			freqs[i] = counts[i];
+			origAmtOfBits += counts[i] * BITS_PER_WORD;
+			countsFitInInt = countsFitInInt && (counts[i] <= Integer.MAX_VALUE);
+		}
+		//adding psuedo eof to map
+		freqs[PSEUDO_EOF]++;
+		if(countsFitInInt)
+		{
+			// the plus one is to hold pseudo eof in index 256
+			int[] asciiVals = new int[ALPH_SIZE + 1];
+			for(int i = 0; i < asciiVals.length; i++)
+			{
+				asciiVals[i] = (int)freqs[i];
+			}
+			huffer.buildHuffmanCodeTree(asciiVals);
+		}
+		else if(headerFormat == STORE_COUNTS)
+		{
+			throw new IllegalArgumentException("counts too big for the count format, use STORE_LARGE_COUNTS.");
+		}
+		else
+		{
+			huffer.buildHuffmanCodeTree(freqs);
+		}
+		if(headerFormat == STORE_CANONICAL)
+		{
+			huffer.makeCanonicalCodes();
+		}
 		setNewAmtOfBits(headerFormat);
+		metrics.endPhase(HuffMetrics.TREE_BUILD, phaseStart);
+		metrics.setCodeLengths(huffer.getCodeLengths());
         return origAmtOfBits - newAmtOfBits;
-    }
+	}
+	
+	/**
+	 * caps a bit count to fit in an int for the methods
+	 * that have to return one	
+	 */
+	public static int toIntBits(long bits)
+	{
+		return (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, bits));
+	}
 	
 	/**
 	 * resets instance varibales if a new file is being compressed	
@@ -53,38 +141,66 @@ public class HuffCompressor implements IHuffConstants
 		origAmtOfBits = 0;
 		newAmtOfBits = BITS_PER_INT + BITS_PER_INT;
 		headerInt = headerFormat;
+		Arrays.fill(freqs, 0);
 		huffer.reset();
 	}
 	
 	/**
-	 * tallies up frequecnies of every charcter in file
+	 * tallies up frequecnies of every charcter in file, public
+	 * so the counting pass can be timed on its own
 	 */
-	private int[] getFreqArr(InputStream in)
+	public long[] getFreqArr(InputStream in)
 	{
-		int curBits = 0;
-		BitInputStream inStream = new BitInputStream(in);
 		//ArrayList<Integer> asciiVals = new ArrayList<Integer>();
-		// the plus one is to hold pseudo eof in index 256
-		int[] asciiVals = new int[ALPH_SIZE + 1];
-		while(curBits != -1)
-		{
-	        try {
-					curBits = inStream.readBits(BITS_PER_WORD);
-	        } catch (IOException e) {
-	            System.out.println("Error / Exception while reading file for preprocessing.");
-	        }
-			if(curBits != -1)
-			{
-				asciiVals[curBits]++;
-				origAmtOfBits += BITS_PER_WORD;
-			}
-		}
-		inStream.close();
-		//adding psuedo eof to map
-		asciiVals[PSEUDO_EOF]++;
+		long[] asciiVals = new long[ALPH_SIZE];
+        try {
+				histogram.count(in, asciiVals);
+				in.close();
+        } catch (IOException e) {
+            System.out.println("Error / Exception while reading file for preprocessing.");
+        }
 		return asciiVals;
 	}
 	
+	/**
+	 * swaps in the histogram the bytes are counted with, such
+	 * as one that counts on several threads, shutting down
+	 * the one it replaces	
+	 */
+	public void setHistogram(HuffHistogram newHistogram)
+	{
+		histogram.shutdown();
+		histogram = newHistogram;
+	}
+	
+	/**
+	 * caps how long the codes can get, 0 for no limit. only the
+	 * tree and canonical headers can carry limited codes since the
+	 * count headers make the uncompressor build its own tree	
+	 */
+	public void setMaxCodeLength(int limit)
+	{
+		huffer.setMaxCodeLength(limit);
+		maxCodeLength = limit;
+	}
+	
+	/**
+	 * returns how many more bits the codes of the last file take
+	 * because of the length limit, 0 if it didn't apply	
+	 */
+	public long getLengthLimitCost()
+	{
+		return huffer.getLengthLimitCost();
+	}
+	
+	/**
+	 * returns the histogram the bytes are counted with	
+	 */
+	public HuffHistogram getHistogram()
+	{
+		return histogram;
+	}
+	
 	/**
 	 * sets new amount of bits writen to the output
 	 * file based on the given header tyep and the
@@ -93,7 +209,7 @@ public class HuffCompressor implements IHuffConstants
 	private void setNewAmtOfBits(int headerFormat)
 	{
 		addBitsForHeaderFormat(headerFormat);
-		addBitsForNewCodeLengths(huffer.getRoot(), huffer.getCodeMap());
+		addBitsForNewCodeLengths();
 	}
 		
 	/**
@@ -107,64 +223,128 @@ public class HuffCompressor implements IHuffConstants
 		{
 			newAmtOfBits += (BITS_PER_INT * ALPH_SIZE);
 		}
-		else
+		else if(headerInt == STORE_TREE)
 		{
 			newAmtOfBits += ( BITS_PER_INT + ((huffer.getNumLeaves() * NUM_BITS_IN_LEAF)
 				 + huffer.getTotalNodes()) );
 		}
+		else if(headerInt == STORE_LARGE_COUNTS)
+		{
+			newAmtOfBits += COUNT_WIDTH_BITS + ((long)ALPH_SIZE * getCountWidth());
+		}
+		else
+		{
+			newAmtOfBits += HuffCanonicalCodes.headerBits(huffer.getCanonicalLengths());
+		}
 	}
 	
 	/**
 	 * adjusts the bit counter based on the lengths of
-	 * the new codes	
+	 * the new codes, using the long frequencies since the
+	 * ones in the tree's nodes are only ints	
 	 */
-	private void addBitsForNewCodeLengths(TreeNode node, HashMap<Integer, String> codeMap)
+	private void addBitsForNewCodeLengths()
 	{
-		if(node != null)
+		byte[] codeLength = huffer.getCodeLengths();
+		for(int i = 0; i < freqs.length; i++)
 		{
-			if(node.isLeaf())
-			{
-				newAmtOfBits += (node.getFrequency() * codeMap.get(node.getValue()).length());
-			}
-			else
-			{
-				addBitsForNewCodeLengths(node.getLeft(), codeMap);
-				addBitsForNewCodeLengths(node.getRight(), codeMap);
-			}
+			newAmtOfBits += freqs[i] * codeLength[i];
 		}
 	}
 	
+	/**
+	 * returns how many bits wide the counts in the large
+	 * counts header are, enough for the biggest count	
+	 */
+	private int getCountWidth()
+	{
+		long maxCount = 0;
+		for(int i = 0; i < ALPH_SIZE; i++)
+		{
+			maxCount = Math.max(maxCount, freqs[i]);
+		}
+		return Long.SIZE - Long.numberOfLeadingZeros(maxCount);
+	}
+	
 	/**
 	 * compresses the file using the previously
 	 * given header format	
 	 */
-	public int compress(BitInputStream inStream, BitOutputStream outStream, 
+	public int compress(InputStream inStream, OutputStream out, 
+		boolean force) throws IOException 
+	{
+		return toIntBits(compressLarge(inStream, out, force));
+	}
+	
+	/**
+	 * compresses the file using the previously given header
+	 * format, returning the number of bits written as a long	
+	 */
+	public long compressLarge(InputStream inStream, OutputStream out, 
 		boolean force) throws IOException 
 	{
 		if( (!force) && (newAmtOfBits > origAmtOfBits) )
 		{
+			finishMetrics(false);
 			return 0;
 		}
+		HuffBitWriter outStream = new HuffBitWriter(out);
+		writeHeader(outStream);
+		long phaseStart = metrics.startPhase();
+		writeOutNewCodes(inStream, outStream);
+		writeEndOfData(outStream);
+		inStream.close();
+		outStream.close();
+		metrics.endPhase(HuffMetrics.ENCODE, phaseStart);
+		finishMetrics(true);
+        return newAmtOfBits;
+    }
+	
+	/**
+	 * writes the magic number, the header format and the header	
+	 */
+	public void writeHeader(HuffBitWriter outStream) throws IOException
+	{
+		long phaseStart = metrics.startPhase();
 		outStream.writeBits(BITS_PER_INT, MAGIC_NUMBER);
 		outStream.writeBits(BITS_PER_INT, headerInt);
 		if(headerInt == STORE_COUNTS)
 		{
 			writeOutSCF(outStream);
 		}
-		else
+		else if(headerInt == STORE_TREE)
 		{
 			writeOutSTF(outStream);
 		}
-		writeOutNewCodes(inStream, outStream);
-		inStream.close();
-		outStream.close();
-        return newAmtOfBits;
-    }
+		else if(headerInt == STORE_LARGE_COUNTS)
+		{
+			writeOutLargeCounts(outStream);
+		}
+		else
+		{
+			HuffCanonicalCodes.writeLengths(outStream, huffer.getCanonicalLengths());
+		}
+		metrics.endPhase(HuffMetrics.HEADER, phaseStart);
+	}
+	
+	/**
+	 * writes out how wide the counts are and then
+	 * all 256 counts at that width	
+	 */
+	private void writeOutLargeCounts(HuffBitWriter outStream) throws IOException
+	{
+		int countWidth = getCountWidth();
+		outStream.writeBits(COUNT_WIDTH_BITS, countWidth);
+		for(int i = 0; i < ALPH_SIZE; i++)
+		{
+			outStream.writeLongBits(countWidth, freqs[i]);
+		}
+	}
 	
 	/**
 	 * writes out the frequencies of all 256 possible values	
 	 */
-	private void writeOutSCF(BitOutputStream outStream)
+	private void writeOutSCF(HuffBitWriter outStream) throws IOException
 	{
 		int index = 0;
 		TreeMap<Integer, Integer> freqMap = huffer.getFreqMap();
@@ -195,7 +375,7 @@ public class HuffCompressor implements IHuffConstants
 	 * writes out the values of the characters
 	 * in the tree	
 	 */
-	private void writeOutSTF(BitOutputStream outStream)
+	private void writeOutSTF(HuffBitWriter outStream) throws IOException
 	{
 		outStream.writeBits(BITS_PER_INT, (huffer.getNumLeaves() * NUM_BITS_IN_LEAF)
 			 + huffer.getTotalNodes());
@@ -207,7 +387,7 @@ public class HuffCompressor implements IHuffConstants
 	 * conducts a pre order traversal of the tree
 	 * to write out the appropriate bits	
 	 */
-	private void stfTreeTraverse(TreeNode node, BitOutputStream outStream)
+	private void stfTreeTraverse(TreeNode node, HuffBitWriter outStream) throws IOException
 	{
 		if(node != null)
 		{
@@ -226,36 +406,137 @@ public class HuffCompressor implements IHuffConstants
 	}
 	
 	/**
-	 * goes through the orignal file to read in the 
-	 * chracters and maps them to the new codes to
-	 * then write out	
+	 * goes through the orignal file a chunk at a time
+	 * and writes out the new code for each chracter
+	 * straight from the code tables	
 	 */
-	private void writeOutNewCodes(BitInputStream inStream, BitOutputStream outStream)
+	private void writeOutNewCodes(InputStream inStream, HuffBitWriter outStream) throws IOException
 	{
-		int curBits = 0;
-		StringBuilder code = new StringBuilder();
-		HashMap<Integer, String> codeMap = huffer.getCodeMap();
-		while(curBits != -1)
+		int[] codeBits = huffer.getCodeBits();
+		byte[] codeLength = huffer.getCodeLengths();
+		boolean hasLongCodes = huffer.getMaxCodeLength() > HuffmanCodeTree.MAX_TABLE_CODE_LENGTH;
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		int amtRead = 0;
+		while(amtRead != -1)
 		{
 	        try {
-					curBits = inStream.readBits(BITS_PER_WORD);
+					amtRead = inStream.read(buffer, 0, buffer.length);
 	        } catch (IOException e) {
 	            System.out.println("Error / Exception while reading file for compressing.");
+	            amtRead = -1;
 	        }
-			if(curBits != -1)
+			for(int i = 0; i < amtRead; i++)
 			{
-				code.append(codeMap.get(curBits));
-				for(int i = 0; i < code.length(); i++)
+				int curBits = buffer[i] & 0xff;
+				if( hasLongCodes && (codeLength[curBits] > HuffmanCodeTree.MAX_TABLE_CODE_LENGTH) )
+				{
+					writeOutLongCode(curBits, outStream);
+				}
+				else
 				{
-					outStream.writeBits(1, Integer.parseInt(code.substring(i, i + 1)));
+					outStream.writeBits(codeLength[curBits], codeBits[curBits]);
 				}
-				code.delete(0, code.length());
 			}
 		}
-		code.append(codeMap.get(PSEUDO_EOF));
+	}
+	
+	/**
+	 * writes out the new code for each byte from the buffer's
+	 * position to its limit, reading them in place	
+	 */
+	public void writeCodes(ByteBuffer src, HuffBitWriter outStream) throws IOException
+	{
+		int[] codeBits = huffer.getCodeBits();
+		byte[] codeLength = huffer.getCodeLengths();
+		boolean hasLongCodes = huffer.getMaxCodeLength() > HuffmanCodeTree.MAX_TABLE_CODE_LENGTH;
+		int end = src.limit();
+		for(int i = src.position(); i < end; i++)
+		{
+			int curBits = src.get(i) & 0xff;
+			if( hasLongCodes && (codeLength[curBits] > HuffmanCodeTree.MAX_TABLE_CODE_LENGTH) )
+			{
+				writeOutLongCode(curBits, outStream);
+			}
+			else
+			{
+				outStream.writeBits(codeLength[curBits], codeBits[curBits]);
+			}
+		}
+		src.position(end);
+	}
+	
+	/**
+	 * writes out the code for the pseudo eof	
+	 */
+	public void writeEndOfData(HuffBitWriter outStream) throws IOException
+	{
+		if(huffer.getCodeLengths()[PSEUDO_EOF] > HuffmanCodeTree.MAX_TABLE_CODE_LENGTH)
+		{
+			writeOutLongCode(PSEUDO_EOF, outStream);
+		}
+		else
+		{
+			outStream.writeBits(huffer.getCodeLengths()[PSEUDO_EOF], huffer.getCodeBits()[PSEUDO_EOF]);
+		}
+	}
+	
+	/**
+	 * fills in the byte counts and keeps the metrics of the
+	 * call that just finished, written being false if the
+	 * compressed file was too big to write	
+	 */
+	public HuffMetrics finishMetrics(boolean written)
+	{
+		long bytesOut = written ? ((newAmtOfBits + BITS_PER_WORD - 1) / BITS_PER_WORD) : 0;
+		metrics.setBytes(origAmtOfBits / BITS_PER_WORD, bytesOut);
+		lastMetrics = metrics.snapshot(HuffMetrics.COMPRESS);
+		return lastMetrics;
+	}
+	
+	/**
+	 * returns the recorder the phases are timed with	
+	 */
+	public HuffMetricsRecorder getMetricsRecorder()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * returns the metrics of the last compress call,
+	 * or null if there hasn't been one	
+	 */
+	public HuffMetrics getMetrics()
+	{
+		return lastMetrics;
+	}
+	
+	/**
+	 * returns the number of bits saved by compressing,
+	 * negative if the compressed file would be bigger	
+	 */
+	public long getBitsSaved()
+	{
+		return origAmtOfBits - newAmtOfBits;
+	}
+	
+	/**
+	 * returns the number of bits the compressed file will have	
+	 */
+	public long getNewAmtOfBits()
+	{
+		return newAmtOfBits;
+	}
+	
+	/**
+	 * writes out a code too long for the code tables
+	 * from its string in the code map	
+	 */
+	private void writeOutLongCode(int value, HuffBitWriter outStream) throws IOException
+	{
+		String code = huffer.getCodeMap().get(value);
 		for(int i = 0; i < code.length(); i++)
 		{
-			outStream.writeBits(1, Integer.parseInt(code.substring(i, i + 1)));
+			outStream.writeBits(1, code.charAt(i) - '0');
 		}
 	}
-}
\ No newline at end of file
+}
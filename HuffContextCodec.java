@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * encodes and decodes the order-1 blocks of the block format, where
+ * the byte before each byte picks which huffman code it's written
+ * with. every byte value that comes up often enough as the previous
+ * byte, its context, gets its own code. the rest share a fallback
+ * code built from all of their counts together, which keeps the
+ * header from paying for lots of tables that hardly get used. the
+ * first byte of a block has 0 as its context
+ */
+public class HuffContextCodec implements IHuffConstants
+{
+	// contexts seen fewer times than this always use the fallback
+	public static final int MIN_CONTEXT_COUNT = 32;
+	// context tables peek fewer bits since there can be so many
+	public static final int CONTEXT_TABLE_BITS = 9;
+	private static final int NUM_CONTEXTS = ALPH_SIZE;
+	// counts of each byte by context, context * ALPH_SIZE + byte
+	private int[] pairCounts;
+	private long[] contextTotals;
+	private boolean[] ownCode;
+	// the code of each byte by context, laid out like pairCounts
+	private int[] codeLengths;
+	private int[] codeBits;
+	private long[] scratchCounts;
+	private int[] scratchLengths;
+	private int[] scratchBits;
+	private int[] fallbackLengths;
+	private int[] fallbackBits;
+	private int maxCodeLength;
+	private HuffmanTreeBuilder builder;
+	private HuffBitWriter writer;
+	private HuffBitReader reader;
+	// the table of each context with its own code, the fallback's last
+	private HuffDecodeTable[] tables;
+	private HuffDecodeTable[] tableOf;
+
+	/**
+	 * initializes the scratch space, the decode
+	 * tables are made as they're needed
+	 */
+	public HuffContextCodec()
+	{
+		pairCounts = new int[NUM_CONTEXTS * ALPH_SIZE];
+		contextTotals = new long[NUM_CONTEXTS];
+		ownCode = new boolean[NUM_CONTEXTS];
+		codeLengths = new int[NUM_CONTEXTS * ALPH_SIZE];
+		codeBits = new int[NUM_CONTEXTS * ALPH_SIZE];
+		scratchCounts = new long[ALPH_SIZE];
+		scratchLengths = new int[ALPH_SIZE];
+		scratchBits = new int[ALPH_SIZE];
+		fallbackLengths = new int[ALPH_SIZE];
+		fallbackBits = new int[ALPH_SIZE];
+		maxCodeLength = 0;
+		builder = new HuffmanTreeBuilder();
+		writer = new HuffBitWriter();
+		reader = new HuffBitReader(new byte[0], 0, 0);
+		tables = new HuffDecodeTable[NUM_CONTEXTS + 1];
+		tableOf = new HuffDecodeTable[NUM_CONTEXTS];
+	}
+
+	/**
+	 * caps how long the codes can get, 0 for no limit
+	 */
+	public void setMaxCodeLength(int limit)
+	{
+		maxCodeLength = limit;
+	}
+
+	/**
+	 * returns the array holding the last payload encoded
+	 */
+	public byte[] getPayload()
+	{
+		return writer.getBytes();
+	}
+
+	/**
+	 * encodes len bytes of src starting at off into the payload
+	 * of a block, returning its size. the payload is in
+	 * getPayload() until the next call
+	 */
+	public int encodeBlock(byte[] src, int off, int len) throws IOException
+	{
+		countPairs(src, off, len);
+		chooseCodes();
+		writer.reset();
+		boolean anyFallback = false;
+		for(int context = 0; context < NUM_CONTEXTS; context++)
+		{
+			writer.writeBits(1, ownCode[context] ? 1 : 0);
+			anyFallback |= !ownCode[context];
+		}
+		if(anyFallback)
+		{
+			HuffCanonicalCodes.writeLengths(writer, fallbackLengths);
+		}
+		for(int context = 0; context < NUM_CONTEXTS; context++)
+		{
+			if(ownCode[context])
+			{
+				System.arraycopy(codeLengths, context * ALPH_SIZE, scratchLengths, 0, ALPH_SIZE);
+				HuffCanonicalCodes.writeLengths(writer, scratchLengths);
+			}
+		}
+		int prev = 0;
+		for(int i = off; i < off + len; i++)
+		{
+			int pair = (prev * ALPH_SIZE) + (src[i] & 0xff);
+			writer.writeBits(codeLengths[pair], codeBits[pair]);
+			prev = src[i] & 0xff;
+		}
+		writer.flush();
+		return writer.size();
+	}
+
+	/**
+	 * counts every byte by the byte before it
+	 */
+	private void countPairs(byte[] src, int off, int len)
+	{
+		Arrays.fill(pairCounts, 0);
+		int prev = 0;
+		for(int i = off; i < off + len; i++)
+		{
+			int curByte = src[i] & 0xff;
+			pairCounts[(prev * ALPH_SIZE) + curByte]++;
+			prev = curByte;
+		}
+		for(int context = 0; context < NUM_CONTEXTS; context++)
+		{
+			long total = 0;
+			for(int i = 0; i < ALPH_SIZE; i++)
+			{
+				total += pairCounts[(context * ALPH_SIZE) + i];
+			}
+			contextTotals[context] = total;
+		}
+	}
+
+	/**
+	 * decides which contexts get their own code and fills in the
+	 * codes of every context. a context that's common enough keeps
+	 * its own code only if that beats the fallback once the lengths
+	 * it has to store are counted, and the fallback is built again
+	 * from every context that ends up using it
+	 */
+	private void chooseCodes()
+	{
+		for(int context = 0; context < NUM_CONTEXTS; context++)
+		{
+			ownCode[context] = contextTotals[context] >= MIN_CONTEXT_COUNT;
+		}
+		makeFallback();
+		boolean changed = false;
+		for(int context = 0; context < NUM_CONTEXTS; context++)
+		{
+			if(ownCode[context])
+			{
+				makeContextCode(context);
+				long ownBits = HuffCanonicalCodes.headerBits(scratchLengths) + bitsWith(context, scratchLengths);
+				if(bitsWith(context, fallbackLengths) <= ownBits)
+				{
+					ownCode[context] = false;
+					changed = true;
+				}
+				else
+				{
+					System.arraycopy(scratchLengths, 0, codeLengths, context * ALPH_SIZE, ALPH_SIZE);
+					System.arraycopy(scratchBits, 0, codeBits, context * ALPH_SIZE, ALPH_SIZE);
+				}
+			}
+		}
+		if(changed)
+		{
+			makeFallback();
+		}
+		for(int context = 0; context < NUM_CONTEXTS; context++)
+		{
+			if(!ownCode[context])
+			{
+				System.arraycopy(fallbackLengths, 0, codeLengths, context * ALPH_SIZE, ALPH_SIZE);
+				System.arraycopy(fallbackBits, 0, codeBits, context * ALPH_SIZE, ALPH_SIZE);
+			}
+		}
+	}
+
+	/**
+	 * builds the fallback code from the counts of every
+	 * context that doesn't have its own code
+	 */
+	private void makeFallback()
+	{
+		Arrays.fill(scratchCounts, 0);
+		for(int context = 0; context < NUM_CONTEXTS; context++)
+		{
+			if(!ownCode[context])
+			{
+				for(int i = 0; i < ALPH_SIZE; i++)
+				{
+					scratchCounts[i] += pairCounts[(context * ALPH_SIZE) + i];
+				}
+			}
+		}
+		HuffBlockCodec.makeCodes(builder, scratchCounts, maxCodeLength, fallbackLengths, fallbackBits);
+	}
+
+	/**
+	 * builds the code for the given context alone
+	 * into scratchLengths and scratchBits
+	 */
+	private void makeContextCode(int context)
+	{
+		for(int i = 0; i < ALPH_SIZE; i++)
+		{
+			scratchCounts[i] = pairCounts[(context * ALPH_SIZE) + i];
+		}
+		HuffBlockCodec.makeCodes(builder, scratchCounts, maxCodeLength, scratchLengths, scratchBits);
+	}
+
+	/**
+	 * returns how many bits the bytes of the given context take with
+	 * the given lengths, or Long.MAX_VALUE if one of them has no code
+	 */
+	private long bitsWith(int context, int[] lengths)
+	{
+		long bits = 0;
+		for(int i = 0; i < ALPH_SIZE; i++)
+		{
+			int count = pairCounts[(context * ALPH_SIZE) + i];
+			if(count != 0)
+			{
+				if(lengths[i] == 0)
+				{
+					return Long.MAX_VALUE;
+				}
+				bits += (long)count * lengths[i];
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * decodes a payload of len bytes starting at off in src
+	 * back into the rawLength bytes it was made from, starting at dstOff
+	 */
+	public void decodeBlock(byte[] src, int off, int len, byte[] dst, int dstOff, int rawLength)
+		throws IOException
+	{
+		reader.reset(src, off, len);
+		boolean anyFallback = false;
+		for(int context = 0; context < NUM_CONTEXTS; context++)
+		{
+			int bit = reader.readBits(1);
+			if(bit == -1)
+			{
+				throw new IllegalStateException("unexpected end of file.");
+			}
+			ownCode[context] = bit == 1;
+			anyFallback |= !ownCode[context];
+		}
+		if(anyFallback)
+		{
+			HuffCanonicalCodes.readLengths(reader, scratchLengths);
+			getTable(NUM_CONTEXTS).build(scratchLengths);
+		}
+		for(int context = 0; context < NUM_CONTEXTS; context++)
+		{
+			if(ownCode[context])
+			{
+				HuffCanonicalCodes.readLengths(reader, scratchLengths);
+				getTable(context).build(scratchLengths);
+				tableOf[context] = tables[context];
+			}
+			else
+			{
+				tableOf[context] = tables[NUM_CONTEXTS];
+			}
+		}
+		int prev = 0;
+		for(int i = 0; i < rawLength; i++)
+		{
+			prev = tableOf[prev].decodeSymbol(reader);
+			dst[dstOff + i] = (byte)prev;
+		}
+	}
+
+	/**
+	 * returns the decode table in the given slot, making it the
+	 * first time, with the fallback's slot after the contexts
+	 */
+	private HuffDecodeTable getTable(int slot)
+	{
+		if(tables[slot] == null)
+		{
+			tables[slot] = new HuffDecodeTable(CONTEXT_TABLE_BITS);
+		}
+		return tables[slot];
+	}
+}
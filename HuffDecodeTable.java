@@ -0,0 +1,531 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * a lookup table built from a huffman tree or from canonical code
+ * lengths that decodes a whole symbol with one peek at the next
+ * TABLE_BITS bits. codes longer than the table finish by walking
+ * the tree from the node the table leaves off at, or for canonical
+ * codes by checking the range of codes of each longer length.
+ * each entry also holds every whole byte code that fits in the
+ * peeked bits, up to four of them, so decodeBytes can turn out
+ * several bytes for one lookup when the codes are short
+ */
+public class HuffDecodeTable implements IHuffConstants
+{
+	public static final int TABLE_BITS = 11;
+	// the most bytes one entry of the multi table can hold
+	public static final int MAX_BYTES_PER_ENTRY = 4;
+	// where the number of bits and bytes sit in a multi entry,
+	// above the bytes themselves in the low 32 bits
+	private final int BITS_SHIFT = 32;
+	private final int COUNT_SHIFT = 40;
+	private final short NO_CODE = -1;
+	private final short LONG_CODE = -2;
+	private int tableBits;
+	// the symbol for each entry, NO_CODE if no code starts with the
+	// entry's bits or LONG_CODE if the code is longer than the table
+	private short[] symbols;
+	// how many of the peeked bits the entry's code actually uses
+	private byte[] lengths;
+	// for entries whose code is longer than the table, the
+	// internal node reached after tableBits bits
+	private TreeNode[] longCodeNodes;
+	// for canonical codes longer than the table, the first code
+	// of each length and where its values start in sortedValues
+	private long[] firstCode;
+	private int[] firstIndex;
+	private int[] countOfLength;
+	private int[] sortedValues;
+	private int maxLength;
+	private boolean fromTree;
+	// if any code is longer than the table
+	private boolean hasLongCodes;
+	// the bytes whose codes fit in each entry packed with how
+	// many there are and how many bits they use, 0 if the first
+	// code is pseudo eof or too long
+	private long[] multiEntries;
+	// if the last decodeBytes call stopped at pseudo eof
+	private boolean reachedEnd;
+
+	/**
+	 * makes an empty table that peeks TABLE_BITS bits
+	 */
+	public HuffDecodeTable()
+	{
+		this(TABLE_BITS);
+	}
+
+	/**
+	 * makes an empty table that peeks the given number of bits
+	 */
+	public HuffDecodeTable(int tableBits)
+	{
+		if( (tableBits < 1) || (tableBits > HuffBitReader.MAX_PEEK_BITS) )
+		{
+			throw new IllegalArgumentException("invalid number of table bits.");
+		}
+		this.tableBits = tableBits;
+		symbols = new short[1 << tableBits];
+		lengths = new byte[1 << tableBits];
+		longCodeNodes = new TreeNode[1 << tableBits];
+		multiEntries = new long[1 << tableBits];
+		firstCode = new long[HuffCanonicalCodes.MAX_CODE_LENGTH + 1];
+		firstIndex = new int[HuffCanonicalCodes.MAX_CODE_LENGTH + 1];
+		countOfLength = new int[HuffCanonicalCodes.MAX_CODE_LENGTH + 1];
+		sortedValues = new int[ALPH_SIZE + 1];
+	}
+
+	/**
+	 * fills in the table from the given huffman tree
+	 */
+	public void build(TreeNode root)
+	{
+		Arrays.fill(symbols, NO_CODE);
+		Arrays.fill(lengths, (byte)0);
+		Arrays.fill(longCodeNodes, null);
+		fromTree = true;
+		hasLongCodes = false;
+		fillFromTree(root, 0, 0);
+		fillMultiEntries();
+	}
+	
+	/**
+	 * fills in the table from the lengths of canonical codes,
+	 * indexed by value, without making a tree
+	 */
+	public void build(int[] codeLengths)
+	{
+		Arrays.fill(symbols, NO_CODE);
+		Arrays.fill(lengths, (byte)0);
+		fromTree = false;
+		hasLongCodes = false;
+		if(sortedValues.length < codeLengths.length)
+		{
+			sortedValues = new int[codeLengths.length];
+		}
+		maxLength = HuffCanonicalCodes.getMaxLength(codeLengths);
+		Arrays.fill(countOfLength, 0);
+		for(int i = 0; i < codeLengths.length; i++)
+		{
+			countOfLength[codeLengths[i]]++;
+		}
+		countOfLength[0] = 0;
+		long code = 0;
+		int index = 0;
+		for(int len = 1; len <= maxLength; len++)
+		{
+			code = (code + countOfLength[len - 1]) << 1;
+			firstCode[len] = code;
+			firstIndex[len] = index;
+			index += countOfLength[len];
+		}
+		// values sorted by length then value are in code order
+		int[] nextIndex = Arrays.copyOf(firstIndex, maxLength + 1);
+		for(int i = 0; i < codeLengths.length; i++)
+		{
+			int len = codeLengths[i];
+			if(len != 0)
+			{
+				sortedValues[nextIndex[len]] = i;
+				nextIndex[len]++;
+				long valueCode = firstCode[len] + (nextIndex[len] - 1 - firstIndex[len]);
+				if(len <= tableBits)
+				{
+					int first = (int)(valueCode << (tableBits - len));
+					int last = first + (1 << (tableBits - len));
+					Arrays.fill(symbols, first, last, (short)i);
+					Arrays.fill(lengths, first, last, (byte)len);
+				}
+				else
+				{
+					symbols[(int)(valueCode >>> (len - tableBits))] = LONG_CODE;
+					hasLongCodes = true;
+				}
+			}
+		}
+		fillMultiEntries();
+	}
+
+	/**
+	 * packs as many byte codes as fit one after the other in each
+	 * entry's bits, going by the single symbol entries. the bits after
+	 * the ones used so far are shifted up to the front, and the code
+	 * found there only counts if it's no longer than what's left
+	 */
+	private void fillMultiEntries()
+	{
+		int mask = (1 << tableBits) - 1;
+		for(int index = 0; index < multiEntries.length; index++)
+		{
+			long entry = 0;
+			int numBits = 0;
+			int count = 0;
+			boolean fits = true;
+			while( (count < MAX_BYTES_PER_ENTRY) && fits )
+			{
+				int next = (index << numBits) & mask;
+				int symbol = symbols[next];
+				fits = (symbol >= 0) && (symbol < ALPH_SIZE) && (lengths[next] <= tableBits - numBits);
+				if(fits)
+				{
+					entry |= (long)symbol << (count * BITS_PER_WORD);
+					numBits += lengths[next];
+					count++;
+				}
+			}
+			multiEntries[index] = entry | ((long)numBits << BITS_SHIFT) | ((long)count << COUNT_SHIFT);
+		}
+	}
+
+	/**
+	 * walks the tree, giving every leaf above the table depth
+	 * all the entries its code is a prefix of
+	 */
+	private void fillFromTree(TreeNode node, int code, int depth)
+	{
+		if(node != null)
+		{
+			if(node.isLeaf())
+			{
+				int first = code << (tableBits - depth);
+				int last = first + (1 << (tableBits - depth));
+				Arrays.fill(symbols, first, last, (short)node.getValue());
+				Arrays.fill(lengths, first, last, (byte)depth);
+			}
+			else if(depth == tableBits)
+			{
+				symbols[code] = LONG_CODE;
+				longCodeNodes[code] = node;
+				hasLongCodes = true;
+			}
+			else
+			{
+				// left is a 0 and right is a 1, same as the code map
+				fillFromTree(node.getLeft(), code << 1, depth + 1);
+				fillFromTree(node.getRight(), (code << 1) | 1, depth + 1);
+			}
+		}
+	}
+
+	/**
+	 * decodes and consumes the next symbol from the reader
+	 */
+	public int decodeSymbol(HuffBitReader reader) throws IOException
+	{
+		int index = reader.peekBits(tableBits);
+		int symbol = symbols[index];
+		if(symbol >= 0)
+		{
+			reader.skipBits(lengths[index]);
+			return symbol;
+		}
+		if(symbol == LONG_CODE)
+		{
+			return decodeLongCode(reader, index);
+		}
+		throw new IllegalStateException("invalid code in file.");
+	}
+
+	/**
+	 * decodes bytes into dst starting at off until len of them are
+	 * written or pseudo eof is decoded, returning how many were
+	 * written. while there's room for a whole entry, every lookup
+	 * writes out all the bytes the entry holds
+	 */
+	public int decodeBytes(HuffBitReader reader, byte[] dst, int off, int len) throws IOException
+	{
+		reachedEnd = false;
+		int out = off;
+		int end = off + len;
+		int fastEnd = end - MAX_BYTES_PER_ENTRY;
+		while(out <= fastEnd)
+		{
+			long entry = multiEntries[reader.peekBits(tableBits)];
+			int count = (int)(entry >>> COUNT_SHIFT);
+			if(count != 0)
+			{
+				reader.skipBits((int)(entry >>> BITS_SHIFT) & 0xff);
+				// all four always fit, only count of them are real
+				dst[out] = (byte)entry;
+				dst[out + 1] = (byte)(entry >>> 8);
+				dst[out + 2] = (byte)(entry >>> 16);
+				dst[out + 3] = (byte)(entry >>> 24);
+				out += count;
+			}
+			else
+			{
+				int symbol = decodeSymbol(reader);
+				if(symbol == PSEUDO_EOF)
+				{
+					reachedEnd = true;
+					return out - off;
+				}
+				dst[out] = (byte)symbol;
+				out++;
+			}
+		}
+		while(out < end)
+		{
+			int symbol = decodeSymbol(reader);
+			if(symbol == PSEUDO_EOF)
+			{
+				reachedEnd = true;
+				return out - off;
+			}
+			dst[out] = (byte)symbol;
+			out++;
+		}
+		return out - off;
+	}
+
+	/**
+	 * decodes four streams of byte codes at once, stream i being the
+	 * bytes of src from srcStarts[i] up to srcEnds[i] and its bytes
+	 * going into dst from starts[i] up to ends[i]. each turn of the
+	 * loop does one lookup in every stream, and since no stream waits
+	 * on another the lookups can overlap. when every code fits in the
+	 * table the bit buffers are kept in local variables instead of the
+	 * readers. the readers are scratch space for finishing the streams
+	 */
+	public void decodeStreams(byte[] src, int[] srcStarts, int[] srcEnds, HuffBitReader[] readers,
+		byte[] dst, int[] starts, int[] ends) throws IOException
+	{
+		int[] outs = Arrays.copyOf(starts, starts.length);
+		if(hasLongCodes)
+		{
+			for(int i = 0; i < readers.length; i++)
+			{
+				readers[i].reset(src, srcStarts[i], srcEnds[i] - srcStarts[i]);
+			}
+		}
+		else
+		{
+			decodeStreamsDirect(src, srcStarts, srcEnds, readers, dst, outs, ends);
+		}
+		decodeStreamsWithReaders(readers, dst, outs, ends);
+	}
+
+	/**
+	 * decodes the four streams with the bit buffers in local variables
+	 * while every stream has eight bytes left to load and room for an
+	 * entry, then points the readers at where each stream got to and
+	 * moves outs up to where each stream's bytes got to. each bit
+	 * buffer is topped up with as many whole bytes as fit before every
+	 * lookup, which leaves at least 56 bits in it, more than any entry
+	 */
+	private void decodeStreamsDirect(byte[] src, int[] srcStarts, int[] srcEnds,
+		HuffBitReader[] readers, byte[] dst, int[] outs, int[] ends) throws IOException
+	{
+		final int BITS_PER_LONG = 64;
+		final int LOAD_SIZE = BITS_PER_LONG / BITS_PER_WORD;
+		ByteBuffer view = ByteBuffer.wrap(src);
+		int mask = (1 << tableBits) - 1;
+		long buffer0 = 0;
+		long buffer1 = 0;
+		long buffer2 = 0;
+		long buffer3 = 0;
+		int bits0 = 0;
+		int bits1 = 0;
+		int bits2 = 0;
+		int bits3 = 0;
+		int pos0 = srcStarts[0];
+		int pos1 = srcStarts[1];
+		int pos2 = srcStarts[2];
+		int pos3 = srcStarts[3];
+		int loadEnd0 = srcEnds[0] - LOAD_SIZE;
+		int loadEnd1 = srcEnds[1] - LOAD_SIZE;
+		int loadEnd2 = srcEnds[2] - LOAD_SIZE;
+		int loadEnd3 = srcEnds[3] - LOAD_SIZE;
+		int out0 = outs[0];
+		int out1 = outs[1];
+		int out2 = outs[2];
+		int out3 = outs[3];
+		int fastEnd0 = ends[0] - MAX_BYTES_PER_ENTRY;
+		int fastEnd1 = ends[1] - MAX_BYTES_PER_ENTRY;
+		int fastEnd2 = ends[2] - MAX_BYTES_PER_ENTRY;
+		int fastEnd3 = ends[3] - MAX_BYTES_PER_ENTRY;
+		while( (pos0 <= loadEnd0) && (pos1 <= loadEnd1) && (pos2 <= loadEnd2) && (pos3 <= loadEnd3)
+			&& (out0 <= fastEnd0) && (out1 <= fastEnd1) && (out2 <= fastEnd2) && (out3 <= fastEnd3) )
+		{
+			// the extra shift by one makes keeping no bytes shift in nothing
+			int bitsToKeep0 = ((BITS_PER_LONG - 1 - bits0) / BITS_PER_WORD) * BITS_PER_WORD;
+			buffer0 = (buffer0 << bitsToKeep0) | ((view.getLong(pos0) >>> 1) >>> (BITS_PER_LONG - 1 - bitsToKeep0));
+			pos0 += bitsToKeep0 / BITS_PER_WORD;
+			bits0 += bitsToKeep0;
+			int bitsToKeep1 = ((BITS_PER_LONG - 1 - bits1) / BITS_PER_WORD) * BITS_PER_WORD;
+			buffer1 = (buffer1 << bitsToKeep1) | ((view.getLong(pos1) >>> 1) >>> (BITS_PER_LONG - 1 - bitsToKeep1));
+			pos1 += bitsToKeep1 / BITS_PER_WORD;
+			bits1 += bitsToKeep1;
+			int bitsToKeep2 = ((BITS_PER_LONG - 1 - bits2) / BITS_PER_WORD) * BITS_PER_WORD;
+			buffer2 = (buffer2 << bitsToKeep2) | ((view.getLong(pos2) >>> 1) >>> (BITS_PER_LONG - 1 - bitsToKeep2));
+			pos2 += bitsToKeep2 / BITS_PER_WORD;
+			bits2 += bitsToKeep2;
+			int bitsToKeep3 = ((BITS_PER_LONG - 1 - bits3) / BITS_PER_WORD) * BITS_PER_WORD;
+			buffer3 = (buffer3 << bitsToKeep3) | ((view.getLong(pos3) >>> 1) >>> (BITS_PER_LONG - 1 - bitsToKeep3));
+			pos3 += bitsToKeep3 / BITS_PER_WORD;
+			bits3 += bitsToKeep3;
+			long entry0 = multiEntries[(int)(buffer0 >>> (bits0 - tableBits)) & mask];
+			long entry1 = multiEntries[(int)(buffer1 >>> (bits1 - tableBits)) & mask];
+			long entry2 = multiEntries[(int)(buffer2 >>> (bits2 - tableBits)) & mask];
+			long entry3 = multiEntries[(int)(buffer3 >>> (bits3 - tableBits)) & mask];
+			out0 = writeEntry(entry0, dst, out0);
+			out1 = writeEntry(entry1, dst, out1);
+			out2 = writeEntry(entry2, dst, out2);
+			out3 = writeEntry(entry3, dst, out3);
+			bits0 -= (int)(entry0 >>> BITS_SHIFT) & 0xff;
+			bits1 -= (int)(entry1 >>> BITS_SHIFT) & 0xff;
+			bits2 -= (int)(entry2 >>> BITS_SHIFT) & 0xff;
+			bits3 -= (int)(entry3 >>> BITS_SHIFT) & 0xff;
+		}
+		outs[0] = out0;
+		outs[1] = out1;
+		outs[2] = out2;
+		outs[3] = out3;
+		int[] poses = {pos0, pos1, pos2, pos3};
+		int[] bitsLeft = {bits0, bits1, bits2, bits3};
+		for(int i = 0; i < readers.length; i++)
+		{
+			// back up to the byte holding the first bit not used yet
+			int amtToBackUp = (bitsLeft[i] + BITS_PER_WORD - 1) / BITS_PER_WORD;
+			int start = poses[i] - amtToBackUp;
+			readers[i].reset(src, start, srcEnds[i] - start);
+			readers[i].skipBits((amtToBackUp * BITS_PER_WORD) - bitsLeft[i]);
+		}
+	}
+
+	/**
+	 * writes out the bytes of an entry of the multi table,
+	 * returning where the next byte goes
+	 */
+	private int writeEntry(long entry, byte[] dst, int out)
+	{
+		int count = (int)(entry >>> COUNT_SHIFT);
+		if(count == 0)
+		{
+			// with no long codes and no pseudo eof, only a bad code
+			throw new IllegalStateException("invalid code in file.");
+		}
+		dst[out] = (byte)entry;
+		dst[out + 1] = (byte)(entry >>> 8);
+		dst[out + 2] = (byte)(entry >>> 16);
+		dst[out + 3] = (byte)(entry >>> 24);
+		return out + count;
+	}
+
+	/**
+	 * decodes the four streams from the readers, the bytes of
+	 * stream i going into dst from outs[i] up to ends[i]. the
+	 * streams finish one at a time once any gets near its end
+	 */
+	private void decodeStreamsWithReaders(HuffBitReader[] readers, byte[] dst, int[] outs, int[] ends)
+		throws IOException
+	{
+		HuffBitReader reader0 = readers[0];
+		HuffBitReader reader1 = readers[1];
+		HuffBitReader reader2 = readers[2];
+		HuffBitReader reader3 = readers[3];
+		int out0 = outs[0];
+		int out1 = outs[1];
+		int out2 = outs[2];
+		int out3 = outs[3];
+		int fastEnd0 = ends[0] - MAX_BYTES_PER_ENTRY;
+		int fastEnd1 = ends[1] - MAX_BYTES_PER_ENTRY;
+		int fastEnd2 = ends[2] - MAX_BYTES_PER_ENTRY;
+		int fastEnd3 = ends[3] - MAX_BYTES_PER_ENTRY;
+		while( (out0 <= fastEnd0) && (out1 <= fastEnd1) && (out2 <= fastEnd2) && (out3 <= fastEnd3) )
+		{
+			out0 = decodeEntry(reader0, dst, out0);
+			out1 = decodeEntry(reader1, dst, out1);
+			out2 = decodeEntry(reader2, dst, out2);
+			out3 = decodeEntry(reader3, dst, out3);
+		}
+		outs[0] = out0;
+		outs[1] = out1;
+		outs[2] = out2;
+		outs[3] = out3;
+		for(int i = 0; i < outs.length; i++)
+		{
+			int len = ends[i] - outs[i];
+			if(decodeBytes(readers[i], dst, outs[i], len) != len)
+			{
+				throw new IllegalStateException("invalid code in file.");
+			}
+		}
+	}
+
+	/**
+	 * writes out the bytes of the next entry of the multi table, or a
+	 * single decoded byte if the entry is empty, returning where the
+	 * next byte goes. there has to be room for a whole entry
+	 */
+	private int decodeEntry(HuffBitReader reader, byte[] dst, int out) throws IOException
+	{
+		long entry = multiEntries[reader.peekBits(tableBits)];
+		int count = (int)(entry >>> COUNT_SHIFT);
+		if(count == 0)
+		{
+			int symbol = decodeSymbol(reader);
+			if(symbol >= ALPH_SIZE)
+			{
+				throw new IllegalStateException("invalid code in file.");
+			}
+			dst[out] = (byte)symbol;
+			return out + 1;
+		}
+		reader.skipBits((int)(entry >>> BITS_SHIFT) & 0xff);
+		dst[out] = (byte)entry;
+		dst[out + 1] = (byte)(entry >>> 8);
+		dst[out + 2] = (byte)(entry >>> 16);
+		dst[out + 3] = (byte)(entry >>> 24);
+		return out + count;
+	}
+
+	/**
+	 * returns if the last decodeBytes call stopped
+	 * because it decoded pseudo eof
+	 */
+	public boolean reachedEnd()
+	{
+		return reachedEnd;
+	}
+
+	/**
+	 * finishes decoding a code that's longer than the table
+	 */
+	private int decodeLongCode(HuffBitReader reader, int index) throws IOException
+	{
+		if(fromTree)
+		{
+			TreeNode node = longCodeNodes[index];
+			reader.skipBits(tableBits);
+			while(!node.isLeaf())
+			{
+				int curBit = reader.peekBits(1);
+				reader.skipBits(1);
+				if(curBit == 0)
+				{
+					node = node.getLeft();
+				}
+				else
+				{
+					node = node.getRight();
+				}
+			}
+			return node.getValue();
+		}
+		for(int len = tableBits + 1; len <= maxLength; len++)
+		{
+			// codes of each length are a run of numbers, and
+			// shorter codes are never prefixes of longer ones
+			long offset = (reader.peekBits(len) & 0xffffffffL) - firstCode[len];
+			if( (offset >= 0) && (offset < countOfLength[len]) )
+			{
+				reader.skipBits(len);
+				return sortedValues[firstIndex[len] + (int)offset];
+			}
+		}
+		throw new IllegalStateException("invalid code in file.");
+	}
+}
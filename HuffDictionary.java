@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * a shared code table for compressing lots of small records that all
+ * look alike. the codes are trained once on a sample of records and
+ * loaded by both sides ahead of time, so a record only stores the
+ * id of its dictionary instead of a header, and neither side counts
+ * bytes or builds a tree per record. every value gets a code, even
+ * ones the samples never had, so any record can be compressed. the
+ * id comes from the code lengths, so the same table always gets the
+ * same id. a dictionary never changes once it's made
+ */
+public class HuffDictionary implements IHuffFormats
+{
+	// keeps the codes short enough to decode quickly
+	public static final int DEFAULT_MAX_CODE_LENGTH = 15;
+	private static final int BYTES_PER_INT = BITS_PER_INT / BITS_PER_WORD;
+	private int id;
+	// the plus one is to hold pseudo eof in index 256
+	private int[] codeLengths;
+	private int[] codeBits;
+
+	/**
+	 * makes a dictionary with the given canonical code lengths
+	 */
+	private HuffDictionary(int[] codeLengths)
+	{
+		this.codeLengths = codeLengths;
+		codeBits = new int[codeLengths.length];
+		HuffCanonicalCodes.assignCodes(codeLengths, codeBits);
+		id = makeId(codeLengths);
+	}
+
+	/**
+	 * builds a dictionary from the given sample records with
+	 * codes no longer than DEFAULT_MAX_CODE_LENGTH
+	 */
+	public static HuffDictionary train(List<byte[]> samples)
+	{
+		return train(samples, DEFAULT_MAX_CODE_LENGTH);
+	}
+
+	/**
+	 * builds a dictionary from the given sample records with
+	 * codes no longer than maxCodeLength
+	 */
+	public static HuffDictionary train(List<byte[]> samples, int maxCodeLength)
+	{
+		long[] counts = new long[ALPH_SIZE + 1];
+		for(byte[] sample: samples)
+		{
+			HuffHistogram.countRange(sample, 0, sample.length, counts);
+			counts[PSEUDO_EOF]++;
+		}
+		// every value gets counted once so it gets a code
+		for(int i = 0; i < counts.length; i++)
+		{
+			counts[i]++;
+		}
+		int[] codeLengths = new int[ALPH_SIZE + 1];
+		HuffBlockCodec.makeCodes(new HuffmanTreeBuilder(), counts, maxCodeLength, codeLengths,
+			new int[ALPH_SIZE + 1]);
+		return new HuffDictionary(codeLengths);
+	}
+
+	/**
+	 * returns the id records compressed with the dictionary store
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
+	/**
+	 * returns a copy of the code length of every value and pseudo eof
+	 */
+	public int[] getCodeLengths()
+	{
+		return codeLengths.clone();
+	}
+
+	/**
+	 * compresses everything in the input to the output with the
+	 * dictionary's codes, returning the number of bits written
+	 */
+	public long compress(InputStream in, OutputStream out) throws IOException
+	{
+		HuffBitWriter outStream = new HuffBitWriter(out);
+		outStream.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+		outStream.writeBits(BITS_PER_INT, STORE_DICTIONARY);
+		outStream.writeBits(BITS_PER_INT, id);
+		byte[] chunk = new byte[HuffHistogram.CHUNK_SIZE];
+		int amtRead = in.read(chunk);
+		while(amtRead != -1)
+		{
+			for(int i = 0; i < amtRead; i++)
+			{
+				int curBits = chunk[i] & 0xff;
+				outStream.writeBits(codeLengths[curBits], codeBits[curBits]);
+			}
+			amtRead = in.read(chunk);
+		}
+		outStream.writeBits(codeLengths[PSEUDO_EOF], codeBits[PSEUDO_EOF]);
+		long bitsWritten = outStream.getBitsWritten();
+		in.close();
+		outStream.close();
+		return bitsWritten;
+	}
+
+	/**
+	 * writes the dictionary out so it can be loaded with read. the
+	 * size of the code lengths is written ahead of them so read
+	 * knows exactly how many bytes are the dictionary's
+	 */
+	public void write(OutputStream out) throws IOException
+	{
+		HuffBitWriter outStream = new HuffBitWriter(out);
+		outStream.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+		outStream.writeBits(BITS_PER_INT, id);
+		outStream.writeBits(BITS_PER_INT, lengthsSize(HuffCanonicalCodes.headerBits(codeLengths)));
+		HuffCanonicalCodes.writeLengths(outStream, codeLengths);
+		outStream.flush();
+	}
+
+	/**
+	 * reads a dictionary written by write, reading no further
+	 * into the input than the end of the dictionary
+	 */
+	public static HuffDictionary read(InputStream in) throws IOException
+	{
+		byte[] header = new byte[3 * BYTES_PER_INT];
+		readFully(in, header, header.length);
+		HuffBitReader inStream = new HuffBitReader(header, 0, header.length);
+		if(inStream.readBits(BITS_PER_INT) != MAGIC_NUMBER)
+		{
+			throw new IllegalArgumentException("file given not a huffman dictionary.");
+		}
+		long storedId = inStream.readLongBits(BITS_PER_INT);
+		int size = inStream.readBits(BITS_PER_INT);
+		if( (size < 1) || (size > lengthsSize(HuffCanonicalCodes.maxHeaderBits(ALPH_SIZE + 1))) )
+		{
+			throw new IllegalStateException("invalid dictionary size.");
+		}
+		byte[] lengthBytes = new byte[size];
+		readFully(in, lengthBytes, size);
+		int[] codeLengths = new int[ALPH_SIZE + 1];
+		HuffCanonicalCodes.readLengths(new HuffBitReader(lengthBytes, 0, size), codeLengths);
+		HuffDictionary dictionary = new HuffDictionary(codeLengths);
+		if(storedId != (dictionary.id & 0xffffffffL))
+		{
+			throw new IllegalStateException("dictionary doesn't match its id.");
+		}
+		return dictionary;
+	}
+
+	/**
+	 * returns how many whole bytes the given number of bits take
+	 */
+	private static int lengthsSize(int bits)
+	{
+		return (bits + BITS_PER_WORD - 1) / BITS_PER_WORD;
+	}
+
+	/**
+	 * reads exactly len bytes into dst
+	 */
+	private static void readFully(InputStream in, byte[] dst, int len) throws IOException
+	{
+		int amtRead = 0;
+		while(amtRead < len)
+		{
+			int curAmt = in.read(dst, amtRead, len - amtRead);
+			if(curAmt == -1)
+			{
+				throw new IllegalStateException("unexpected end of file.");
+			}
+			amtRead += curAmt;
+		}
+	}
+
+	/**
+	 * returns the crc32 of the code lengths
+	 */
+	private static int makeId(int[] codeLengths)
+	{
+		CRC32 crc = new CRC32();
+		for(int i = 0; i < codeLengths.length; i++)
+		{
+			crc.update(codeLengths[i]);
+		}
+		return (int)crc.getValue();
+	}
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * compresses and uncompresses files on disk by memory mapping them
+ * instead of going through streams. the counting pass and the
+ * encoding pass both read the bytes right out of the mapping, and
+ * the output goes to the file through a large direct buffer. a file
+ * is mapped a window at a time so files over 2 GB work
+ */
+public class HuffFileCompressor implements IHuffFormats
+{
+	// how much of a file is mapped at once, a mapping can't be over 2 GB
+	public static final int MAP_WINDOW_SIZE = 1 << 30;
+	// comp short for compressor
+	private HuffCompressor comp;
+	private int windowSize;
+	// the metrics of the last compress or uncompress call
+	private HuffMetrics lastMetrics;
+
+	/**
+	 * initializes the instance variables
+	 */
+	public HuffFileCompressor()
+	{
+		this(MAP_WINDOW_SIZE);
+	}
+
+	/**
+	 * initializes the instance variables, mapping windows
+	 * of the given size
+	 */
+	public HuffFileCompressor(int windowSize)
+	{
+		if(windowSize < 1)
+		{
+			throw new IllegalArgumentException("invalid window size given.");
+		}
+		this.windowSize = windowSize;
+		comp = new HuffCompressor();
+	}
+
+	/**
+	 * caps how long the codes can get, 0 for no limit
+	 */
+	public void setMaxCodeLength(int limit)
+	{
+		comp.setMaxCodeLength(limit);
+	}
+
+	/**
+	 * counts the bytes in the given file and sets up everything
+	 * needed to compress it, returning the number of bits saved
+	 */
+	public long preprocessCompress(Path in, int headerFormat) throws IOException
+	{
+		HuffMetricsRecorder metrics = comp.getMetricsRecorder();
+		metrics.begin();
+		long phaseStart = metrics.startPhase();
+		long[] counts = new long[ALPH_SIZE];
+		try (FileChannel channel = FileChannel.open(in, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			for(long windowStart = 0; windowStart < fileSize; windowStart += windowSize)
+			{
+				comp.getHistogram().count(mapWindow(channel, windowStart, windowSize), counts);
+			}
+		}
+		metrics.endPhase(HuffMetrics.HISTOGRAM, phaseStart);
+		return comp.preprocessCounts(counts, headerFormat);
+	}
+
+	/**
+	 * compresses the given file, which must have been passed to
+	 * preprocessCompress first, returning the number of bits written
+	 */
+	public long compress(Path in, Path out, boolean force) throws IOException
+	{
+		if( (!force) && (comp.getBitsSaved() < 0) )
+		{
+			lastMetrics = comp.finishMetrics(false);
+			return 0;
+		}
+		try (FileChannel channel = FileChannel.open(in, StandardOpenOption.READ)) {
+			HuffBitWriter outStream = new HuffBitWriter(new HuffChannelOutputStream(out));
+			try {
+					comp.writeHeader(outStream);
+					long phaseStart = comp.getMetricsRecorder().startPhase();
+					long fileSize = channel.size();
+					for(long windowStart = 0; windowStart < fileSize; windowStart += windowSize)
+					{
+						comp.writeCodes(mapWindow(channel, windowStart, windowSize), outStream);
+					}
+					comp.writeEndOfData(outStream);
+					comp.getMetricsRecorder().endPhase(HuffMetrics.ENCODE, phaseStart);
+			} finally {
+				outStream.close();
+			}
+		}
+		lastMetrics = comp.finishMetrics(true);
+		return comp.getNewAmtOfBits();
+	}
+
+	/**
+	 * uncompresses the given file in any of the formats,
+	 * returning the number of bits written
+	 */
+	public long uncompress(Path in, Path out) throws IOException
+	{
+		// uncomp short for uncompressor
+		HuffUncompressor uncomp = new HuffUncompressor();
+		long bitsWritten = uncomp.uncompressLarge(new HuffMappedInputStream(FileChannel.open(in,
+			StandardOpenOption.READ), windowSize), new HuffChannelOutputStream(out));
+		lastMetrics = uncomp.getMetrics();
+		return bitsWritten;
+	}
+
+	/**
+	 * returns the metrics of the last compress or uncompress
+	 * call, or null if there hasn't been one
+	 */
+	public HuffMetrics getMetrics()
+	{
+		return lastMetrics;
+	}
+
+	/**
+	 * maps up to windowSize bytes of the channel starting at the given
+	 * position, the mapping being empty at or past the end of the file
+	 */
+	public static MappedByteBuffer mapWindow(FileChannel channel, long windowStart, int windowSize)
+		throws IOException
+	{
+		long amtLeft = Math.max(0, channel.size() - windowStart);
+		return channel.map(FileChannel.MapMode.READ_ONLY, Math.min(windowStart, channel.size()),
+			Math.min(amtLeft, windowSize));
+	}
+}
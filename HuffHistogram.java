@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * counts how many times each byte value shows up. bytes are read
+ * a big chunk at a time and counted into four arrays in turn, so a
+ * run of the same byte doesn't make every increment wait on the one
+ * before it, and the four are added up at the end. inputs big
+ * enough can also be split across threads that each count their own
+ * part. the counts are exactly what counting a byte at a time gives
+ */
+public class HuffHistogram implements IHuffConstants
+{
+	// how much of a stream is read at a time by one thread
+	public static final int CHUNK_SIZE = 1 << 16;
+	// the least each thread gets when counting in parallel
+	public static final int MIN_PARALLEL_SIZE = 1 << 20;
+	private int parallelism;
+	// null when counting on one thread
+	private ForkJoinPool pool;
+	private byte[] chunk;
+
+	/**
+	 * counts on the calling thread
+	 */
+	public HuffHistogram()
+	{
+		this(1);
+	}
+
+	/**
+	 * counts big inputs on up to the given number of threads
+	 */
+	public HuffHistogram(int parallelism)
+	{
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException("invalid parallelism given.");
+		}
+		this.parallelism = parallelism;
+		pool = null;
+		if(parallelism > 1)
+		{
+			pool = new ForkJoinPool(parallelism);
+		}
+		// each thread gets a full share of a chunk
+		chunk = new byte[(parallelism == 1) ? CHUNK_SIZE : parallelism * MIN_PARALLEL_SIZE];
+	}
+
+	/**
+	 * adds the counts of everything left in the stream to counts,
+	 * returning how many bytes were read
+	 */
+	public long count(InputStream in, long[] counts) throws IOException
+	{
+		long amtReadTotal = 0;
+		int amtRead = HuffBlockCompressor.readBlock(in, chunk);
+		while(amtRead > 0)
+		{
+			count(ByteBuffer.wrap(chunk, 0, amtRead), counts);
+			amtReadTotal += amtRead;
+			amtRead = (amtRead < chunk.length) ? 0 : HuffBlockCompressor.readBlock(in, chunk);
+		}
+		return amtReadTotal;
+	}
+
+	/**
+	 * adds the counts of len bytes of src starting at off to counts
+	 */
+	public void count(byte[] src, int off, int len, long[] counts)
+	{
+		count(ByteBuffer.wrap(src, off, len), counts);
+	}
+
+	/**
+	 * adds the counts of the bytes from the buffer's position to its
+	 * limit to counts, leaving the position where it was
+	 */
+	public void count(ByteBuffer src, long[] counts)
+	{
+		if( (pool == null) || (src.remaining() < MIN_PARALLEL_SIZE * 2) )
+		{
+			countBuffer(src.duplicate(), counts, chunk);
+		}
+		else
+		{
+			int sliceSize = Math.max(MIN_PARALLEL_SIZE, (src.remaining() + parallelism - 1) / parallelism);
+			CountTask task = new CountTask(src.duplicate(), sliceSize);
+			pool.invoke(task);
+			for(int i = 0; i < ALPH_SIZE; i++)
+			{
+				counts[i] += task.counts[i];
+			}
+		}
+	}
+
+	/**
+	 * counts everything left in the buffer, copying it through
+	 * scratch first if it isn't backed by an array
+	 */
+	private static void countBuffer(ByteBuffer src, long[] counts, byte[] scratch)
+	{
+		if(src.hasArray())
+		{
+			countRange(src.array(), src.arrayOffset() + src.position(), src.remaining(), counts);
+			return;
+		}
+		while(src.hasRemaining())
+		{
+			int amtToCopy = Math.min(scratch.length, src.remaining());
+			src.get(scratch, 0, amtToCopy);
+			countRange(scratch, 0, amtToCopy, counts);
+		}
+	}
+
+	/**
+	 * adds the counts of len bytes of src starting at off to counts,
+	 * spreading them over four arrays that are added up at the end
+	 */
+	public static void countRange(byte[] src, int off, int len, long[] counts)
+	{
+		// no array can get more than a quarter of an int's worth
+		int[] counts0 = new int[ALPH_SIZE];
+		int[] counts1 = new int[ALPH_SIZE];
+		int[] counts2 = new int[ALPH_SIZE];
+		int[] counts3 = new int[ALPH_SIZE];
+		int end = off + len;
+		int endOfFours = off + (len & ~3);
+		int i = off;
+		while(i < endOfFours)
+		{
+			counts0[src[i] & 0xff]++;
+			counts1[src[i + 1] & 0xff]++;
+			counts2[src[i + 2] & 0xff]++;
+			counts3[src[i + 3] & 0xff]++;
+			i += 4;
+		}
+		while(i < end)
+		{
+			counts0[src[i] & 0xff]++;
+			i++;
+		}
+		for(int value = 0; value < ALPH_SIZE; value++)
+		{
+			counts[value] += (long)counts0[value] + counts1[value] + counts2[value] + counts3[value];
+		}
+	}
+
+	/**
+	 * shuts down the threads, the histogram
+	 * can't be used after this
+	 */
+	public void shutdown()
+	{
+		if(pool != null)
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * counts a slice of a buffer into its own counts, splitting it
+	 * in half until the slices are small enough to count directly
+	 */
+	private static class CountTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private ByteBuffer src;
+		private int sliceSize;
+		private long[] counts;
+
+		public CountTask(ByteBuffer src, int sliceSize)
+		{
+			this.src = src;
+			this.sliceSize = sliceSize;
+			counts = new long[ALPH_SIZE];
+		}
+
+		protected void compute()
+		{
+			if(src.remaining() > sliceSize)
+			{
+				int mid = src.position() + (src.remaining() / 2);
+				ByteBuffer low = src.duplicate();
+				low.limit(mid);
+				ByteBuffer high = src.duplicate();
+				high.position(mid);
+				CountTask lowTask = new CountTask(low, sliceSize);
+				CountTask highTask = new CountTask(high, sliceSize);
+				invokeAll(lowTask, highTask);
+				for(int i = 0; i < ALPH_SIZE; i++)
+				{
+					counts[i] = lowTask.counts[i] + highTask.counts[i];
+				}
+			}
+			else
+			{
+				countBuffer(src, counts, new byte[Math.min(CHUNK_SIZE, Math.max(1, src.remaining()))]);
+			}
+		}
+	}
+}
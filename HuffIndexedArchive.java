@@ -0,0 +1,225 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * reads a file written in the indexed block format. the block index
+ * footer lets any range of the original data be uncompressed by
+ * seeking straight to the blocks that hold it, and lets every block
+ * be uncompressed at the same time on separate threads
+ */
+public class HuffIndexedArchive implements IHuffFormats, Closeable
+{
+	private FileChannel channel;
+	private HuffBlockIndex index;
+	private int blockSize;
+	// the end of the last block, where the end block is
+	private long blocksEnd;
+	// scratch space for readRange
+	private HuffBlockCodec codec;
+	private byte[] block;
+
+	/**
+	 * opens the given file and reads its block index
+	 */
+	public HuffIndexedArchive(Path path) throws IOException
+	{
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+				ByteBuffer header = HuffBlockIndex.readFully(channel, 0, BITS_PER_INT * 3 / BITS_PER_WORD);
+				if(header.getInt() != MAGIC_NUMBER)
+				{
+					throw new IllegalArgumentException("file given not a huffman file.");
+				}
+				if(header.getInt() != STORE_INDEXED_BLOCKS)
+				{
+					throw new IllegalArgumentException("file has no block index.");
+				}
+				blockSize = header.getInt();
+				if( (blockSize < 1) || (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+				{
+					throw new IllegalStateException("invalid block size.");
+				}
+				index = HuffBlockIndex.read(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		blocksEnd = channel.size() - HuffBlockIndex.TRAILER_SIZE
+			- ((long)index.getNumBlocks() * HuffBlockIndex.ENTRY_SIZE) - 1;
+		codec = new HuffBlockCodec();
+		block = new byte[blockSize];
+	}
+
+	/**
+	 * returns the length of the original data
+	 */
+	public long getUncompressedLength()
+	{
+		return index.getUncompressedLength();
+	}
+
+	/**
+	 * uncompresses len bytes of the original data starting at
+	 * offset into dst, returning how many bytes there were,
+	 * which is less than len only at the end of the data
+	 */
+	public int readRange(long offset, byte[] dst, int dstOff, int len) throws IOException
+	{
+		if( (offset < 0) || (len < 0) || (dstOff < 0) || (dstOff + len > dst.length) )
+		{
+			throw new IllegalArgumentException("invalid range given.");
+		}
+		int amtCopied = 0;
+		int curBlock = index.findBlock(offset);
+		while( (amtCopied < len) && (curBlock != -1) && (curBlock < index.getNumBlocks()) )
+		{
+			decodeBlock(curBlock, codec, block);
+			long blockStart = index.getUncompressedOffset(curBlock);
+			int from = (int)(offset + amtCopied - blockStart);
+			int amtToCopy = Math.min(len - amtCopied, index.getRawLength(curBlock) - from);
+			System.arraycopy(block, from, dst, dstOff + amtCopied, amtToCopy);
+			amtCopied += amtToCopy;
+			curBlock++;
+		}
+		return amtCopied;
+	}
+
+	/**
+	 * uncompresses the whole file to the output using up to the given
+	 * number of threads, returning the number of bits written
+	 */
+	public long uncompress(OutputStream out, int parallelism) throws IOException
+	{
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException("invalid parallelism given.");
+		}
+		// two blocks per thread at a time keeps memory bounded
+		byte[][] blocks = new byte[parallelism * 2][blockSize];
+		HuffBlockCodec[] codecs = new HuffBlockCodec[blocks.length];
+		for(int i = 0; i < codecs.length; i++)
+		{
+			codecs[i] = new HuffBlockCodec();
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		long bitCount = 0;
+		try {
+				int first = 0;
+				while(first < index.getNumBlocks())
+				{
+					int numInBatch = Math.min(blocks.length, index.getNumBlocks() - first);
+					try {
+							pool.invoke(new DecodeTask(first, 0, numInBatch, codecs, blocks));
+					} catch (UncheckedIOException e) {
+						throw e.getCause();
+					}
+					for(int i = 0; i < numInBatch; i++)
+					{
+						int rawLength = index.getRawLength(first + i);
+						out.write(blocks[i], 0, rawLength);
+						bitCount += (long)rawLength * BITS_PER_WORD;
+					}
+					first += numInBatch;
+				}
+		} finally {
+			pool.shutdown();
+		}
+		out.close();
+		return bitCount;
+	}
+
+	/**
+	 * reads the given block out of the file and decodes it into dst
+	 */
+	private void decodeBlock(int curBlock, HuffBlockCodec blockCodec, byte[] dst) throws IOException
+	{
+		long start = index.getCompressedOffset(curBlock);
+		long end = blocksEnd;
+		if(curBlock + 1 < index.getNumBlocks())
+		{
+			end = index.getCompressedOffset(curBlock + 1);
+		}
+		int headerSize = HuffBlockCodec.BLOCK_HEADER_BITS / BITS_PER_WORD;
+		if( (start < 0) || (end - start < headerSize) || (end - start > Integer.MAX_VALUE) )
+		{
+			throw new IllegalStateException("invalid block index.");
+		}
+		ByteBuffer framed = ByteBuffer.allocate((int)(end - start));
+		while(framed.hasRemaining())
+		{
+			// positional reads so threads don't fight over the position
+			if(channel.read(framed, start + framed.position()) == -1)
+			{
+				throw new IllegalStateException("unexpected end of file.");
+			}
+		}
+		framed.flip();
+		int blockType = framed.get();
+		int rawLength = framed.getInt();
+		int payloadSize = framed.getInt();
+		if( !HuffBlockCodec.isBlockType(blockType) || (rawLength != index.getRawLength(curBlock))
+			|| (rawLength > blockSize) || (payloadSize != framed.remaining()) )
+		{
+			throw new IllegalStateException("invalid block header.");
+		}
+		blockCodec.decodeBlock(blockType, framed.array(), headerSize, payloadSize, dst, 0, rawLength);
+	}
+
+	/**
+	 * closes the file
+	 */
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * decodes a range of the current batch of blocks, splitting
+	 * it in half until each task has a single block
+	 */
+	private class DecodeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private int firstBlock;
+		private int start;
+		private int end;
+		private HuffBlockCodec[] codecs;
+		private byte[][] blocks;
+
+		public DecodeTask(int firstBlock, int start, int end, HuffBlockCodec[] codecs,
+			byte[][] blocks)
+		{
+			this.firstBlock = firstBlock;
+			this.start = start;
+			this.end = end;
+			this.codecs = codecs;
+			this.blocks = blocks;
+		}
+
+		protected void compute()
+		{
+			if(end - start > 1)
+			{
+				int mid = (start + end) / 2;
+				invokeAll(new DecodeTask(firstBlock, start, mid, codecs, blocks),
+					new DecodeTask(firstBlock, mid, end, codecs, blocks));
+			}
+			else
+			{
+				try {
+						decodeBlock(firstBlock + start, codecs[start], blocks[start]);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * uncompresses the block format as it's read, a block at a time, so
+ * it can sit in a chain of streams like GZIPInputStream. the header
+ * and every block are read with exact reads instead of through a
+ * read ahead buffer, so it never waits on bytes past the block it's
+ * working on. that way a reader gets every block a HuffOutputStream
+ * has flushed even while the writer is still going, and whatever
+ * comes after the end block is left in the underlying stream
+ */
+public class HuffInputStream extends FilterInputStream implements IHuffFormats
+{
+	private final int BYTES_PER_INT = BITS_PER_INT / BITS_PER_WORD;
+	private HuffBlockCodec codec;
+	private int blockSize;
+	private byte[] block;
+	private byte[] payload;
+	// scratch space for the header and each block header
+	private byte[] header;
+	// the bytes of the block not read yet are from pos up to limit
+	private int pos;
+	private int limit;
+	private boolean readHeader;
+	private boolean reachedEnd;
+
+	/**
+	 * uncompresses from the given stream, the header
+	 * isn't read until the first byte is
+	 */
+	public HuffInputStream(InputStream in)
+	{
+		super(in);
+		codec = new HuffBlockCodec();
+		blockSize = 0;
+		block = new byte[0];
+		payload = new byte[0];
+		header = new byte[HuffBlockCodec.BLOCK_HEADER_BITS / BITS_PER_WORD];
+		pos = 0;
+		limit = 0;
+		readHeader = false;
+		reachedEnd = false;
+	}
+
+	/**
+	 * returns the next byte, or -1 at the end of the compressed data
+	 */
+	public int read() throws IOException
+	{
+		if( (pos == limit) && !nextBlock() )
+		{
+			return -1;
+		}
+		int value = block[pos] & 0xff;
+		pos++;
+		return value;
+	}
+
+	/**
+	 * reads up to len bytes into dst starting at off, returning how
+	 * many were read, or -1 at the end of the compressed data. never
+	 * reads more than what's left of the current block
+	 */
+	public int read(byte[] dst, int off, int len) throws IOException
+	{
+		if( (off < 0) || (len < 0) || (len > dst.length - off) )
+		{
+			throw new IndexOutOfBoundsException();
+		}
+		if(len == 0)
+		{
+			return 0;
+		}
+		if( (pos == limit) && !nextBlock() )
+		{
+			return -1;
+		}
+		int amtToCopy = Math.min(len, limit - pos);
+		System.arraycopy(block, pos, dst, off, amtToCopy);
+		pos += amtToCopy;
+		return amtToCopy;
+	}
+
+	/**
+	 * skips up to n bytes, returning how many were skipped
+	 */
+	public long skip(long n) throws IOException
+	{
+		long amtSkipped = 0;
+		while(amtSkipped < n)
+		{
+			if( (pos == limit) && !nextBlock() )
+			{
+				break;
+			}
+			int amtToSkip = (int)Math.min(n - amtSkipped, limit - pos);
+			pos += amtToSkip;
+			amtSkipped += amtToSkip;
+		}
+		return amtSkipped;
+	}
+
+	/**
+	 * returns how many bytes are left in the current block,
+	 * which can be read without blocking
+	 */
+	public int available() throws IOException
+	{
+		return limit - pos;
+	}
+
+	/**
+	 * returns false, blocks are thrown away once they're read
+	 */
+	public boolean markSupported()
+	{
+		return false;
+	}
+
+	public void mark(int readlimit)
+	{
+	}
+
+	public void reset() throws IOException
+	{
+		throw new IOException("mark not supported.");
+	}
+
+	/**
+	 * reads and decodes the next block, returning
+	 * false once the end block has been read
+	 */
+	private boolean nextBlock() throws IOException
+	{
+		if(!readHeader)
+		{
+			readStreamHeader();
+			readHeader = true;
+		}
+		if(reachedEnd)
+		{
+			return false;
+		}
+		readFully(header, 0, 1);
+		int blockType = header[0] & 0xff;
+		if(blockType == HuffBlockCodec.BLOCK_END)
+		{
+			reachedEnd = true;
+			return false;
+		}
+		if(!HuffBlockCodec.isBlockType(blockType))
+		{
+			throw new IllegalStateException("invalid block type.");
+		}
+		readFully(header, 1, header.length - 1);
+		int rawLength = getInt(header, 1);
+		int payloadSize = getInt(header, 1 + BYTES_PER_INT);
+		HuffBlockUncompressor.checkBlockLengths(rawLength, payloadSize, blockSize);
+		if(payload.length < payloadSize)
+		{
+			payload = new byte[Math.max(payloadSize, payload.length * 2)];
+		}
+		readFully(payload, 0, payloadSize);
+		codec.decodeBlock(blockType, payload, 0, payloadSize, block, 0, rawLength);
+		pos = 0;
+		limit = rawLength;
+		return true;
+	}
+
+	/**
+	 * reads the magic number, the header format and the block size
+	 */
+	private void readStreamHeader() throws IOException
+	{
+		byte[] streamHeader = new byte[3 * BYTES_PER_INT];
+		readFully(streamHeader, 0, streamHeader.length);
+		if(getInt(streamHeader, 0) != MAGIC_NUMBER)
+		{
+			throw new IllegalArgumentException("stream given not a huffman file.");
+		}
+		int headerFormat = getInt(streamHeader, BYTES_PER_INT);
+		// the block index after the end block isn't needed to read in order
+		if( (headerFormat != STORE_BLOCKS) && (headerFormat != STORE_INDEXED_BLOCKS) )
+		{
+			throw new IllegalArgumentException("stream given not in the block format.");
+		}
+		blockSize = getInt(streamHeader, 2 * BYTES_PER_INT);
+		if( (blockSize < 1) || (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+		{
+			throw new IllegalStateException("invalid block size.");
+		}
+		block = new byte[blockSize];
+	}
+
+	/**
+	 * reads exactly len bytes into dst starting at off
+	 */
+	private void readFully(byte[] dst, int off, int len) throws IOException
+	{
+		int amtRead = 0;
+		while(amtRead < len)
+		{
+			int curAmt = in.read(dst, off + amtRead, len - amtRead);
+			if(curAmt == -1)
+			{
+				throw new IllegalStateException("unexpected end of file.");
+			}
+			amtRead += curAmt;
+		}
+	}
+
+	/**
+	 * returns the int stored most significant byte first at off
+	 */
+	private int getInt(byte[] src, int off)
+	{
+		int value = 0;
+		for(int i = 0; i < BYTES_PER_INT; i++)
+		{
+			value = (value << BITS_PER_WORD) | (src[off + i] & 0xff);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,165 @@
+import java.util.Arrays;
+
+/**
+ * finds the best code lengths that are no longer than a given limit
+ * with the package-merge algorithm. at each length, from the longest
+ * up, the values sorted by frequency are merged with packages made
+ * by pairing off the list one length down, and the cheapest 2n - 2
+ * items at the top say how long every code is. the result is the
+ * smallest encoding possible under the limit, and it's a complete
+ * prefix code so it can be turned straight into canonical codes
+ */
+public class HuffLengthLimiter
+{
+	// the widest shift that fits in a long
+	private static final int BITS_IN_LONG = 63;
+
+	/**
+	 * fills lengths with the best code length of every value with a
+	 * nonzero frequency, none longer than maxLength, and 0 for the
+	 * rest. a lone value gets a length of 1
+	 */
+	public static void limitLengths(long[] freqs, int maxLength, int[] lengths)
+	{
+		Arrays.fill(lengths, 0);
+		int[] sorted = sortValues(freqs);
+		int n = sorted.length;
+		if(n == 0)
+		{
+			return;
+		}
+		if(n == 1)
+		{
+			lengths[sorted[0]] = 1;
+			return;
+		}
+		if( (maxLength < 1) || ((maxLength < BITS_IN_LONG) && ((1L << maxLength) < n)) )
+		{
+			throw new IllegalArgumentException("max code length too short for the number of values.");
+		}
+		// no code needs to be longer than n - 1 bits
+		int numLevels = Math.min(maxLength, n - 1);
+		// level 0 holds the 1 bit codes, the last level the longest
+		long[][] weights = new long[numLevels][2 * n];
+		boolean[][] isPackage = new boolean[numLevels][2 * n];
+		int[] levelSize = new int[numLevels];
+		int deepest = numLevels - 1;
+		for(int i = 0; i < n; i++)
+		{
+			weights[deepest][i] = freqs[sorted[i]];
+		}
+		levelSize[deepest] = n;
+		for(int level = deepest - 1; level >= 0; level--)
+		{
+			mergeLevel(freqs, sorted, weights[level + 1], levelSize[level + 1], weights[level],
+				isPackage[level]);
+			levelSize[level] = n + (levelSize[level + 1] / 2);
+		}
+		// walk back down, every leaf picked at a level adds a bit
+		// to its code and every package picked splits in two
+		int amtToTake = (2 * n) - 2;
+		for(int level = 0; level < numLevels; level++)
+		{
+			int numLeaves = 0;
+			int numPackages = 0;
+			for(int i = 0; i < amtToTake; i++)
+			{
+				if(isPackage[level][i])
+				{
+					numPackages++;
+				}
+				else
+				{
+					numLeaves++;
+				}
+			}
+			for(int i = 0; i < numLeaves; i++)
+			{
+				lengths[sorted[i]]++;
+			}
+			amtToTake = 2 * numPackages;
+		}
+	}
+
+	/**
+	 * merges the sorted values with the packages made by pairing
+	 * off the level below, leaves going first on ties
+	 */
+	private static void mergeLevel(long[] freqs, int[] sorted, long[] below, int belowSize,
+		long[] weightsOut, boolean[] isPackageOut)
+	{
+		int numPackages = belowSize / 2;
+		int leaf = 0;
+		int pack = 0;
+		int out = 0;
+		while( (leaf < sorted.length) || (pack < numPackages) )
+		{
+			long packWeight = 0;
+			if(pack < numPackages)
+			{
+				packWeight = below[2 * pack] + below[(2 * pack) + 1];
+			}
+			if( (pack == numPackages)
+				|| ((leaf < sorted.length) && (freqs[sorted[leaf]] <= packWeight)) )
+			{
+				weightsOut[out] = freqs[sorted[leaf]];
+				isPackageOut[out] = false;
+				leaf++;
+			}
+			else
+			{
+				weightsOut[out] = packWeight;
+				isPackageOut[out] = true;
+				pack++;
+			}
+			out++;
+		}
+	}
+
+	/**
+	 * returns the values with nonzero frequencies sorted
+	 * by frequency, ties going to the lower value
+	 */
+	private static int[] sortValues(long[] freqs)
+	{
+		int n = 0;
+		for(int i = 0; i < freqs.length; i++)
+		{
+			if(freqs[i] != 0)
+			{
+				n++;
+			}
+		}
+		Integer[] values = new Integer[n];
+		n = 0;
+		for(int i = 0; i < freqs.length; i++)
+		{
+			if(freqs[i] != 0)
+			{
+				values[n] = i;
+				n++;
+			}
+		}
+		Arrays.sort(values, (a, b) -> (freqs[a] != freqs[b]) ? Long.compare(freqs[a], freqs[b]) : a - b);
+		int[] sorted = new int[n];
+		for(int i = 0; i < n; i++)
+		{
+			sorted[i] = values[i];
+		}
+		return sorted;
+	}
+
+	/**
+	 * returns how many more bits the given frequencies take with
+	 * the new lengths than with the old ones
+	 */
+	public static long extraBits(long[] freqs, int[] oldLengths, int[] newLengths)
+	{
+		long extra = 0;
+		for(int i = 0; i < freqs.length; i++)
+		{
+			extra += freqs[i] * (newLengths[i] - oldLengths[i]);
+		}
+		return extra;
+	}
+}
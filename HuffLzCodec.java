@@ -0,0 +1,432 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * encodes and decodes the lz77 blocks of the block format. repeats
+ * of earlier bytes are found with hash chains over a sliding window
+ * and turned into a length and a distance back, and everything else
+ * stays a literal byte. the literals and lengths share one huffman
+ * code and the distances get their own, both stored as canonical
+ * code lengths ahead of the codes. lengths and distances are sent as
+ * a bucket symbol and then some extra bits, the buckets growing by
+ * powers of two so small values cost few bits. matches never reach
+ * outside the block, so blocks still decode on their own
+ */
+public class HuffLzCodec implements IHuffConstants
+{
+	public static final int MIN_MATCH = 4;
+	public static final int MAX_MATCH = 258;
+	// how far back a match can start
+	public static final int WINDOW_SIZE = 1 << 16;
+	public static final int MIN_LEVEL = 1;
+	public static final int MAX_LEVEL = 9;
+	// levels from here on up check if waiting a byte finds a longer match
+	private static final int LAZY_LEVEL = 4;
+	// the bucket symbols that cover every match length and distance
+	public static final int NUM_LENGTH_SYMBOLS = 16;
+	public static final int NUM_DISTANCE_SYMBOLS = 32;
+	// literals are 0 to 255 and lengths come after them
+	public static final int NUM_LITERAL_SYMBOLS = ALPH_SIZE + NUM_LENGTH_SYMBOLS;
+	private static final int HASH_BITS = 15;
+	private static final int HASH_MULTIPLIER = 0x9e3779b1;
+	// the next look for a match skips one more byte for every
+	// this many literals since the last match
+	private static final int SKIP_RUN = 1 << 8;
+	// a token is a literal byte or a match's length shifted up past
+	// its distance less one, which is always bigger than any byte
+	private static final int DISTANCE_BITS = 16;
+	private static final int DISTANCE_MASK = (1 << DISTANCE_BITS) - 1;
+	private int level;
+	private int maxChain;
+	private int niceLength;
+	private int maxCodeLength;
+	private int[] head;
+	private int[] prev;
+	private int[] tokens;
+	private int numTokens;
+	// set by findMatch
+	private int matchLength;
+	private int matchDistance;
+	private long[] literalCounts;
+	private long[] distanceCounts;
+	private int[] literalLengths;
+	private int[] literalBits;
+	private int[] distanceLengths;
+	private int[] distanceBits;
+	private HuffmanTreeBuilder builder;
+	private HuffBitWriter writer;
+	private HuffBitReader reader;
+	private HuffDecodeTable literalTable;
+	private HuffDecodeTable distanceTable;
+
+	/**
+	 * initializes the scratch space for the given effort level,
+	 * from MIN_LEVEL for the fastest to MAX_LEVEL for the smallest
+	 */
+	public HuffLzCodec(int level)
+	{
+		setLevel(level);
+		maxCodeLength = 0;
+		head = new int[1 << HASH_BITS];
+		prev = new int[WINDOW_SIZE];
+		tokens = new int[0];
+		literalCounts = new long[NUM_LITERAL_SYMBOLS];
+		distanceCounts = new long[NUM_DISTANCE_SYMBOLS];
+		literalLengths = new int[NUM_LITERAL_SYMBOLS];
+		literalBits = new int[NUM_LITERAL_SYMBOLS];
+		distanceLengths = new int[NUM_DISTANCE_SYMBOLS];
+		distanceBits = new int[NUM_DISTANCE_SYMBOLS];
+		builder = new HuffmanTreeBuilder();
+		writer = new HuffBitWriter();
+		reader = new HuffBitReader(new byte[0], 0, 0);
+		literalTable = new HuffDecodeTable();
+		distanceTable = new HuffDecodeTable();
+	}
+
+	/**
+	 * sets the effort level, which is how many earlier places
+	 * with the same next four bytes get checked for a match
+	 */
+	public void setLevel(int level)
+	{
+		if( (level < MIN_LEVEL) || (level > MAX_LEVEL) )
+		{
+			throw new IllegalArgumentException("invalid lz level given.");
+		}
+		this.level = level;
+		maxChain = 1 << (level + 1);
+		// a match this long is good enough to stop looking
+		niceLength = Math.min(MAX_MATCH, 8 << level);
+	}
+
+	/**
+	 * caps how long the codes can get, 0 for no limit
+	 */
+	public void setMaxCodeLength(int limit)
+	{
+		maxCodeLength = limit;
+	}
+
+	/**
+	 * returns the array holding the last payload encoded
+	 */
+	public byte[] getPayload()
+	{
+		return writer.getBytes();
+	}
+
+	/**
+	 * encodes len bytes of src starting at off into the payload
+	 * of a block, returning its size. the payload is in
+	 * getPayload() until the next call
+	 */
+	public int encodeBlock(byte[] src, int off, int len) throws IOException
+	{
+		findTokens(src, off, len);
+		Arrays.fill(literalCounts, 0);
+		Arrays.fill(distanceCounts, 0);
+		for(int i = 0; i < numTokens; i++)
+		{
+			int token = tokens[i];
+			if(token < ALPH_SIZE)
+			{
+				literalCounts[token]++;
+			}
+			else
+			{
+				literalCounts[ALPH_SIZE + bucketOf((token >>> DISTANCE_BITS) - MIN_MATCH)]++;
+				distanceCounts[bucketOf(token & DISTANCE_MASK)]++;
+			}
+		}
+		HuffBlockCodec.makeCodes(builder, literalCounts, maxCodeLength, literalLengths, literalBits);
+		HuffBlockCodec.makeCodes(builder, distanceCounts, maxCodeLength, distanceLengths, distanceBits);
+		writer.reset();
+		HuffCanonicalCodes.writeLengths(writer, literalLengths);
+		HuffCanonicalCodes.writeLengths(writer, distanceLengths);
+		for(int i = 0; i < numTokens; i++)
+		{
+			int token = tokens[i];
+			if(token < ALPH_SIZE)
+			{
+				writer.writeBits(literalLengths[token], literalBits[token]);
+			}
+			else
+			{
+				int length = (token >>> DISTANCE_BITS) - MIN_MATCH;
+				int lengthSymbol = ALPH_SIZE + bucketOf(length);
+				writer.writeBits(literalLengths[lengthSymbol], literalBits[lengthSymbol]);
+				writeExtraBits(length);
+				int distance = token & DISTANCE_MASK;
+				int distanceSymbol = bucketOf(distance);
+				writer.writeBits(distanceLengths[distanceSymbol], distanceBits[distanceSymbol]);
+				writeExtraBits(distance);
+			}
+		}
+		writer.flush();
+		return writer.size();
+	}
+
+	/**
+	 * turns the block into literals and matches, greedily taking
+	 * the longest match at each byte, or at the higher levels
+	 * putting it off a byte if the next byte starts a longer one.
+	 * a long run of literals looks for matches further and further
+	 * apart, so data without any goes by quickly, and the bytes
+	 * skipped aren't added to the hash chains
+	 */
+	private void findTokens(byte[] src, int off, int len)
+	{
+		if(tokens.length < len)
+		{
+			tokens = new int[len];
+		}
+		numTokens = 0;
+		Arrays.fill(head, -1);
+		int end = off + len;
+		int i = off;
+		// where the literals since the last match start
+		int literalStart = off;
+		while(i < end)
+		{
+			if(i + MIN_MATCH > end)
+			{
+				tokens[numTokens++] = src[i] & 0xff;
+				i++;
+			}
+			else
+			{
+				findMatch(src, off, end, i);
+				int length = matchLength;
+				int distance = matchDistance;
+				insert(src, i);
+				if( (length >= MIN_MATCH) && (level >= LAZY_LEVEL) && (length < niceLength)
+					&& (i + 1 + MIN_MATCH <= end) )
+				{
+					findMatch(src, off, end, i + 1);
+					if(matchLength > length)
+					{
+						// the next byte gets its match on the next turn
+						tokens[numTokens++] = src[i] & 0xff;
+						i++;
+						continue;
+					}
+				}
+				if(length >= MIN_MATCH)
+				{
+					tokens[numTokens++] = (length << DISTANCE_BITS) | (distance - 1);
+					for(int j = i + 1; (j < i + length) && (j + MIN_MATCH <= end); j++)
+					{
+						insert(src, j);
+					}
+					i += length;
+					literalStart = i;
+				}
+				else
+				{
+					int skipEnd = Math.min(end, i + 1 + ((i - literalStart) / SKIP_RUN));
+					while(i < skipEnd)
+					{
+						tokens[numTokens++] = src[i] & 0xff;
+						i++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * walks the hash chain of the four bytes at pos looking for
+	 * the longest match that starts in the window, leaving it in
+	 * matchLength and matchDistance, with a length of 0 for none
+	 */
+	private void findMatch(byte[] src, int start, int end, int pos)
+	{
+		matchLength = 0;
+		matchDistance = 0;
+		int maxLength = Math.min(MAX_MATCH, end - pos);
+		int candidate = head[hash(src, pos)];
+		int chainLeft = maxChain;
+		while( (candidate >= start) && (pos - candidate <= WINDOW_SIZE) && (chainLeft > 0) )
+		{
+			// only a match longer than the best so far is worth counting
+			if(src[candidate + matchLength] == src[pos + matchLength])
+			{
+				int length = 0;
+				while( (length < maxLength) && (src[candidate + length] == src[pos + length]) )
+				{
+					length++;
+				}
+				if(length > matchLength)
+				{
+					matchLength = length;
+					matchDistance = pos - candidate;
+					if( (length >= niceLength) || (length == maxLength) )
+					{
+						return;
+					}
+				}
+			}
+			int next = prev[candidate & (WINDOW_SIZE - 1)];
+			// a slot reused by a newer byte ends the chain
+			if(next >= candidate)
+			{
+				return;
+			}
+			candidate = next;
+			chainLeft--;
+		}
+	}
+
+	/**
+	 * adds the four bytes at pos to the front of their hash chain
+	 */
+	private void insert(byte[] src, int pos)
+	{
+		int h = hash(src, pos);
+		prev[pos & (WINDOW_SIZE - 1)] = head[h];
+		head[h] = pos;
+	}
+
+	/**
+	 * returns the hash of the four bytes at pos
+	 */
+	private static int hash(byte[] src, int pos)
+	{
+		int bytes = ((src[pos] & 0xff) << 24) | ((src[pos + 1] & 0xff) << 16)
+			| ((src[pos + 2] & 0xff) << 8) | (src[pos + 3] & 0xff);
+		return (bytes * HASH_MULTIPLIER) >>> (BITS_PER_INT - HASH_BITS);
+	}
+
+	/**
+	 * returns the bucket symbol of the given length or distance. 0 to
+	 * 3 get their own, and after that every power of two is split into
+	 * two buckets, told apart by the bit under the highest one
+	 */
+	public static int bucketOf(int value)
+	{
+		if(value < 4)
+		{
+			return value;
+		}
+		int highBit = BITS_PER_INT - 1 - Integer.numberOfLeadingZeros(value);
+		return (2 * highBit) + ((value >>> (highBit - 1)) & 1);
+	}
+
+	/**
+	 * returns how many extra bits follow the given bucket symbol
+	 */
+	public static int extraBitsOf(int bucket)
+	{
+		return (bucket < 4) ? 0 : (bucket / 2) - 1;
+	}
+
+	/**
+	 * returns the smallest value in the given bucket
+	 */
+	public static int bucketBase(int bucket)
+	{
+		if(bucket < 4)
+		{
+			return bucket;
+		}
+		return (2 | (bucket & 1)) << extraBitsOf(bucket);
+	}
+
+	/**
+	 * writes how far the value is past the start of its bucket
+	 */
+	private void writeExtraBits(int value) throws IOException
+	{
+		int bucket = bucketOf(value);
+		int numExtra = extraBitsOf(bucket);
+		if(numExtra > 0)
+		{
+			writer.writeBits(numExtra, value - bucketBase(bucket));
+		}
+	}
+
+	/**
+	 * decodes a payload of len bytes starting at off in src
+	 * back into the rawLength bytes it was made from, starting at dstOff
+	 */
+	public void decodeBlock(byte[] src, int off, int len, byte[] dst, int dstOff, int rawLength)
+		throws IOException
+	{
+		reader.reset(src, off, len);
+		HuffCanonicalCodes.readLengths(reader, literalLengths);
+		HuffCanonicalCodes.readLengths(reader, distanceLengths);
+		literalTable.build(literalLengths);
+		distanceTable.build(distanceLengths);
+		int out = 0;
+		while(out < rawLength)
+		{
+			int symbol = literalTable.decodeSymbol(reader);
+			if(symbol < ALPH_SIZE)
+			{
+				dst[dstOff + out] = (byte)symbol;
+				out++;
+			}
+			else
+			{
+				int length = readValue(symbol - ALPH_SIZE, NUM_LENGTH_SYMBOLS) + MIN_MATCH;
+				int distance = readValue(distanceTable.decodeSymbol(reader), NUM_DISTANCE_SYMBOLS) + 1;
+				if( (distance > out) || (length > rawLength - out) )
+				{
+					throw new IllegalStateException("invalid match in file.");
+				}
+				copyMatch(dst, dstOff + out, distance, length);
+				out += length;
+			}
+		}
+	}
+
+	/**
+	 * reads the extra bits after a bucket symbol and
+	 * returns the length or distance they make
+	 */
+	private int readValue(int bucket, int numBuckets) throws IOException
+	{
+		if(bucket >= numBuckets)
+		{
+			throw new IllegalStateException("invalid code in file.");
+		}
+		int numExtra = extraBitsOf(bucket);
+		int extra = 0;
+		if(numExtra > 0)
+		{
+			extra = reader.readBits(numExtra);
+			if(extra == -1)
+			{
+				throw new IllegalStateException("unexpected end of file.");
+			}
+		}
+		return bucketBase(bucket) + extra;
+	}
+
+	/**
+	 * copies length bytes from distance back to out, a byte at a
+	 * time when the match runs into the bytes it's copying
+	 */
+	private static void copyMatch(byte[] dst, int out, int distance, int length)
+	{
+		if(distance >= length)
+		{
+			System.arraycopy(dst, out - distance, dst, out, length);
+		}
+		else
+		{
+			for(int i = 0; i < length; i++)
+			{
+				dst[out + i] = dst[out + i - distance];
+			}
+		}
+	}
+
+	/**
+	 * returns the level the codec was made with
+	 */
+	public int getLevel()
+	{
+		return level;
+	}
+}
@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * an input stream over a memory mapped file. the file is mapped one
+ * window at a time, so files bigger than a single mapping can hold
+ * work, and reads copy straight out of the mapping
+ */
+public class HuffMappedInputStream extends InputStream
+{
+	private FileChannel channel;
+	private int windowSize;
+	// where the current window starts in the file
+	private long windowStart;
+	private MappedByteBuffer window;
+
+	/**
+	 * opens and maps the given file, a window of
+	 * HuffFileCompressor.MAP_WINDOW_SIZE bytes at a time
+	 */
+	public HuffMappedInputStream(Path path) throws IOException
+	{
+		this(FileChannel.open(path, StandardOpenOption.READ), HuffFileCompressor.MAP_WINDOW_SIZE);
+	}
+
+	/**
+	 * maps the given channel a window of the given size at a time
+	 */
+	public HuffMappedInputStream(FileChannel channel, int windowSize) throws IOException
+	{
+		if(windowSize < 1)
+		{
+			throw new IllegalArgumentException("invalid window size given.");
+		}
+		this.channel = channel;
+		this.windowSize = windowSize;
+		windowStart = 0;
+		window = HuffFileCompressor.mapWindow(channel, 0, windowSize);
+	}
+
+	public int read() throws IOException
+	{
+		if(!nextWindowIfEmpty())
+		{
+			return -1;
+		}
+		return window.get() & 0xff;
+	}
+
+	public int read(byte[] dst, int off, int len) throws IOException
+	{
+		if( (off < 0) || (len < 0) || (off + len > dst.length) )
+		{
+			throw new IndexOutOfBoundsException();
+		}
+		if(len == 0)
+		{
+			return 0;
+		}
+		if(!nextWindowIfEmpty())
+		{
+			return -1;
+		}
+		int amtToCopy = Math.min(len, window.remaining());
+		window.get(dst, off, amtToCopy);
+		return amtToCopy;
+	}
+
+	public int available()
+	{
+		return window.remaining();
+	}
+
+	/**
+	 * maps the next window once the current one has been read,
+	 * returning false if there's nothing left in the file
+	 */
+	private boolean nextWindowIfEmpty() throws IOException
+	{
+		if(!window.hasRemaining())
+		{
+			windowStart += window.capacity();
+			window = HuffFileCompressor.mapWindow(channel, windowStart, windowSize);
+		}
+		return window.hasRemaining();
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * a snapshot of what one compress or uncompress call did: the time
+ * spent in each phase, how many bytes went in and came out, the
+ * code length of every value and how many bytes the calling thread
+ * allocated. made by HuffMetricsRecorder and never changed after
+ */
+public class HuffMetrics
+{
+	// the phases, used to index the phase times. when uncompressing
+	// HEADER also covers rebuilding the codes from the header
+	public static final int HISTOGRAM = 0;
+	public static final int TREE_BUILD = 1;
+	public static final int HEADER = 2;
+	public static final int ENCODE = 3;
+	public static final int DECODE = 4;
+	public static final int NUM_PHASES = 5;
+	// the kinds of call
+	public static final int COMPRESS = 0;
+	public static final int UNCOMPRESS = 1;
+	private static final String[] PHASE_NAMES = {"histogram", "tree", "header", "encode", "decode"};
+	private int operation;
+	private long[] phaseNanos;
+	private long totalNanos;
+	private long bytesIn;
+	private long bytesOut;
+	// -1 if the jvm can't count allocations
+	private long allocatedBytes;
+	// index i holds how many values got a code i bits long
+	private int[] codeLengthCounts;
+
+	/**
+	 * makes a snapshot from the given values, which
+	 * are copied so the recorder can be reused
+	 */
+	public HuffMetrics(int operation, long[] phaseNanos, long totalNanos, long bytesIn,
+		long bytesOut, long allocatedBytes, int[] codeLengthCounts)
+	{
+		this.operation = operation;
+		this.phaseNanos = phaseNanos.clone();
+		this.totalNanos = totalNanos;
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+		this.allocatedBytes = allocatedBytes;
+		this.codeLengthCounts = codeLengthCounts.clone();
+	}
+
+	/**
+	 * returns COMPRESS or UNCOMPRESS
+	 */
+	public int getOperation()
+	{
+		return operation;
+	}
+
+	/**
+	 * returns the nanoseconds spent in the given phase
+	 */
+	public long getPhaseNanos(int phase)
+	{
+		return phaseNanos[phase];
+	}
+
+	/**
+	 * returns the nanoseconds from the start of the
+	 * call, or of preprocessCompress, to the end
+	 */
+	public long getTotalNanos()
+	{
+		return totalNanos;
+	}
+
+	/**
+	 * returns how many bytes were read, the original data
+	 * when compressing and the compressed data when not
+	 */
+	public long getBytesIn()
+	{
+		return bytesIn;
+	}
+
+	/**
+	 * returns how many bytes were written
+	 */
+	public long getBytesOut()
+	{
+		return bytesOut;
+	}
+
+	/**
+	 * returns how many bytes the calling thread allocated,
+	 * or -1 if the jvm can't tell
+	 */
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	/**
+	 * returns how many values got a code of each length, index i
+	 * being the number with i bit codes. empty when uncompressing
+	 */
+	public int[] getCodeLengthCounts()
+	{
+		return codeLengthCounts.clone();
+	}
+
+	/**
+	 * returns the original data's megabytes per second over the whole call
+	 */
+	public double getMegabytesPerSecond()
+	{
+		if(totalNanos == 0)
+		{
+			return 0;
+		}
+		long originalBytes = (operation == COMPRESS) ? bytesIn : bytesOut;
+		return originalBytes / (totalNanos / 1e9) / (1 << 20);
+	}
+
+	/**
+	 * returns the compressed size over the original size
+	 */
+	public double getCompressionRatio()
+	{
+		long originalBytes = (operation == COMPRESS) ? bytesIn : bytesOut;
+		long compressedBytes = (operation == COMPRESS) ? bytesOut : bytesIn;
+		if(originalBytes == 0)
+		{
+			return 0;
+		}
+		return compressedBytes / (double)originalBytes;
+	}
+
+	/**
+	 * returns a one line summary of the metrics
+	 */
+	public String toString()
+	{
+		StringBuilder summary = new StringBuilder();
+		summary.append((operation == COMPRESS) ? "compress" : "uncompress");
+		summary.append(String.format(": %d bytes in, %d bytes out, ratio %.3f, %.1f MB/s",
+			bytesIn, bytesOut, getCompressionRatio(), getMegabytesPerSecond()));
+		for(int i = 0; i < NUM_PHASES; i++)
+		{
+			if(phaseNanos[i] != 0)
+			{
+				summary.append(String.format(", %s %.3f ms", PHASE_NAMES[i], phaseNanos[i] / 1e6));
+			}
+		}
+		if(allocatedBytes != -1)
+		{
+			summary.append(", " + allocatedBytes + " bytes allocated");
+		}
+		return summary.toString();
+	}
+}
@@ -0,0 +1,139 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * collects the metrics of a call as it runs. all it does is read
+ * the clock at the edges of each phase and the thread's allocation
+ * counter at the start and end, so it's cheap enough to leave on
+ */
+public class HuffMetricsRecorder
+{
+	// null if the jvm can't count allocations per thread
+	private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = findAllocationBean();
+	private long[] phaseNanos;
+	private long startNanos;
+	private long startAllocated;
+	private long bytesIn;
+	private long bytesOut;
+	private int[] codeLengthCounts;
+
+	/**
+	 * initializes the instance variables
+	 */
+	public HuffMetricsRecorder()
+	{
+		phaseNanos = new long[HuffMetrics.NUM_PHASES];
+		codeLengthCounts = new int[0];
+		begin();
+	}
+
+	/**
+	 * returns the bean that counts allocations, or null if
+	 * this jvm doesn't have one or it's turned off
+	 */
+	private static com.sun.management.ThreadMXBean findAllocationBean()
+	{
+		try {
+				ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+				if( (bean instanceof com.sun.management.ThreadMXBean)
+					&& ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()
+					&& ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemoryEnabled() )
+				{
+					return (com.sun.management.ThreadMXBean)bean;
+				}
+		} catch (LinkageError | SecurityException e) {
+			// not a hotspot jvm, allocations just won't be counted
+		}
+		return null;
+	}
+
+	/**
+	 * returns how many bytes the current thread has
+	 * allocated so far, or -1 if that can't be counted
+	 */
+	private static long allocatedSoFar()
+	{
+		if(ALLOCATION_BEAN == null)
+		{
+			return -1;
+		}
+		return ALLOCATION_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * clears everything and starts timing a new call
+	 */
+	public void begin()
+	{
+		for(int i = 0; i < phaseNanos.length; i++)
+		{
+			phaseNanos[i] = 0;
+		}
+		bytesIn = 0;
+		bytesOut = 0;
+		codeLengthCounts = new int[0];
+		startAllocated = allocatedSoFar();
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * returns the time to pass to endPhase when a phase starts
+	 */
+	public long startPhase()
+	{
+		return System.nanoTime();
+	}
+
+	/**
+	 * adds the time since phaseStart to the given phase
+	 */
+	public void endPhase(int phase, long phaseStart)
+	{
+		phaseNanos[phase] += System.nanoTime() - phaseStart;
+	}
+
+	/**
+	 * sets how many bytes were read and written
+	 */
+	public void setBytes(long bytesIn, long bytesOut)
+	{
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+	}
+
+	/**
+	 * counts how many values have each code length, values
+	 * with a length of 0 not being in the code
+	 */
+	public void setCodeLengths(byte[] codeLength)
+	{
+		int maxLength = 0;
+		for(int i = 0; i < codeLength.length; i++)
+		{
+			maxLength = Math.max(maxLength, codeLength[i] & 0xff);
+		}
+		codeLengthCounts = new int[maxLength + 1];
+		for(int i = 0; i < codeLength.length; i++)
+		{
+			if(codeLength[i] != 0)
+			{
+				codeLengthCounts[codeLength[i] & 0xff]++;
+			}
+		}
+	}
+
+	/**
+	 * returns the metrics from begin up to now
+	 */
+	public HuffMetrics snapshot(int operation)
+	{
+		long totalNanos = System.nanoTime() - startNanos;
+		long allocated = allocatedSoFar();
+		if(allocated != -1)
+		{
+			allocated -= startAllocated;
+		}
+		return new HuffMetrics(operation, phaseNanos, totalNanos, bytesIn, bytesOut, allocated,
+			codeLengthCounts);
+	}
+}
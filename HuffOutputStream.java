@@ -0,0 +1,184 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * compresses everything written to it into the block format as it
+ * goes, so it can sit in a chain of streams like GZIPOutputStream.
+ * bytes are gathered into a block and the block is encoded and
+ * written out once it's full. flush writes out whatever is in the
+ * block so far as a shorter block, so the other side can read every
+ * byte written before the flush, at the cost of a block header and
+ * code table each time. nothing is finished until finish or close
+ */
+public class HuffOutputStream extends FilterOutputStream implements IHuffFormats
+{
+	private byte[] block;
+	// how many bytes of the block are filled
+	private int amtInBlock;
+	private HuffBlockCodec codec;
+	private HuffBitWriter outStream;
+	private boolean finished;
+
+	/**
+	 * compresses to the given stream with blocks of
+	 * HuffBlockCompressor.DEFAULT_BLOCK_SIZE bytes
+	 */
+	public HuffOutputStream(OutputStream out) throws IOException
+	{
+		this(out, HuffBlockCompressor.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * compresses to the given stream with blocks of the given size,
+	 * anywhere from HuffBlockCompressor.MIN_BLOCK_SIZE to
+	 * HuffBlockCodec.MAX_BLOCK_SIZE, writing the header right away
+	 */
+	public HuffOutputStream(OutputStream out, int blockSize) throws IOException
+	{
+		super(out);
+		if( (blockSize < HuffBlockCompressor.MIN_BLOCK_SIZE)
+			|| (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+		{
+			throw new IllegalArgumentException("invalid block size given.");
+		}
+		block = new byte[blockSize];
+		amtInBlock = 0;
+		codec = new HuffBlockCodec();
+		outStream = new HuffBitWriter(out);
+		finished = false;
+		HuffBlockCompressor.writeStreamHeader(outStream, STORE_BLOCKS, blockSize);
+	}
+
+	/**
+	 * sets how blocks are encoded
+	 */
+	public void setOptions(HuffBlockOptions options)
+	{
+		codec.setOptions(options);
+	}
+
+	/**
+	 * adds one byte to the block
+	 */
+	public void write(int b) throws IOException
+	{
+		checkOpen();
+		block[amtInBlock] = (byte)b;
+		amtInBlock++;
+		if(amtInBlock == block.length)
+		{
+			writeBlock(block, 0, amtInBlock);
+			amtInBlock = 0;
+		}
+	}
+
+	/**
+	 * adds len bytes of src starting at off to the block, encoding
+	 * whole blocks straight out of src when the block is empty
+	 */
+	public void write(byte[] src, int off, int len) throws IOException
+	{
+		checkOpen();
+		if( (off < 0) || (len < 0) || (len > src.length - off) )
+		{
+			throw new IndexOutOfBoundsException();
+		}
+		while(len > 0)
+		{
+			if( (amtInBlock == 0) && (len >= block.length) )
+			{
+				writeBlock(src, off, block.length);
+				off += block.length;
+				len -= block.length;
+			}
+			else
+			{
+				int amtToCopy = Math.min(len, block.length - amtInBlock);
+				System.arraycopy(src, off, block, amtInBlock, amtToCopy);
+				amtInBlock += amtToCopy;
+				off += amtToCopy;
+				len -= amtToCopy;
+				if(amtInBlock == block.length)
+				{
+					writeBlock(block, 0, amtInBlock);
+					amtInBlock = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * writes out the bytes in the block so far as a block of their
+	 * own and flushes everything down to the underlying stream
+	 */
+	public void flush() throws IOException
+	{
+		// the block is already empty once finished
+		writePending();
+		// every block ends on a byte boundary, so this adds no padding
+		outStream.flush();
+	}
+
+	/**
+	 * writes out the bytes in the block and the end block without
+	 * closing the underlying stream. nothing more can be written
+	 */
+	public void finish() throws IOException
+	{
+		if(!finished)
+		{
+			writePending();
+			outStream.writeBits(BITS_PER_WORD, HuffBlockCodec.BLOCK_END);
+			outStream.flush();
+			finished = true;
+		}
+	}
+
+	/**
+	 * finishes the compressed data and closes the underlying stream
+	 */
+	public void close() throws IOException
+	{
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * writes the bytes in the block out as a block
+	 * if there are any and empties it
+	 */
+	private void writePending() throws IOException
+	{
+		if(amtInBlock > 0)
+		{
+			writeBlock(block, 0, amtInBlock);
+			amtInBlock = 0;
+		}
+	}
+
+	/**
+	 * encodes len bytes of src starting at off and writes them
+	 * out as a block
+	 */
+	private void writeBlock(byte[] src, int off, int len) throws IOException
+	{
+		int payloadSize = codec.encodeBlock(src, off, len);
+		HuffBlockCompressor.writeBlock(outStream, codec.getBlockType(), len, codec.getPayload(),
+			payloadSize);
+	}
+
+	/**
+	 * makes sure nothing is written after finish
+	 */
+	private void checkOpen() throws IOException
+	{
+		if(finished)
+		{
+			throw new IOException("stream already finished.");
+		}
+	}
+}
@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * compresses into the same block format as HuffBlockCompressor but
+ * builds the trees and encodes the blocks on a ForkJoinPool. the
+ * input is read a batch of blocks at a time, every block in the batch
+ * is encoded into its own buffer at the same time, and then the
+ * buffers are written out in order, so the output is byte for byte
+ * what HuffBlockCompressor writes for the same block size
+ */
+public class HuffParallelCompressor implements IHuffFormats
+{
+	// how many blocks each thread gets per batch
+	private final int BLOCKS_PER_THREAD = 2;
+	private int blockSize;
+	private ForkJoinPool pool;
+	private HuffBlockSlots slots;
+	// whether a block index footer goes after the end block
+	private boolean indexed;
+	// how many bytes the last compress call read
+	private long amtReadTotal;
+
+	/**
+	 * compresses with blocks of the given size using up to the
+	 * given number of threads
+	 */
+	public HuffParallelCompressor(int blockSize, int parallelism)
+	{
+		this(blockSize, parallelism, false);
+	}
+
+	/**
+	 * compresses with blocks of the given size using up to the given
+	 * number of threads, writing a block index footer if indexed is true
+	 */
+	public HuffParallelCompressor(int blockSize, int parallelism, boolean indexed)
+	{
+		if( (blockSize < HuffBlockCompressor.MIN_BLOCK_SIZE)
+			|| (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+		{
+			throw new IllegalArgumentException("invalid block size given.");
+		}
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException("invalid parallelism given.");
+		}
+		this.blockSize = blockSize;
+		this.indexed = indexed;
+		pool = new ForkJoinPool(parallelism);
+		slots = new HuffBlockSlots(parallelism * BLOCKS_PER_THREAD, blockSize);
+	}
+
+	/**
+	 * compresses everything in the input to the output and
+	 * returns the number of bits written
+	 */
+	public long compress(InputStream in, OutputStream out) throws IOException
+	{
+		HuffBitWriter outStream = new HuffBitWriter(out);
+		HuffBlockIndex index = new HuffBlockIndex();
+		long bitsWritten = HuffBlockCompressor.writeStreamHeader(outStream,
+			indexed ? STORE_INDEXED_BLOCKS : STORE_BLOCKS, blockSize);
+		amtReadTotal = 0;
+		int numFilled = readBatch(in);
+		while(numFilled > 0)
+		{
+			try {
+					pool.invoke(new EncodeTask(0, numFilled));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			for(int i = 0; i < numFilled; i++)
+			{
+				HuffBlockSlots.Slot slot = slots.get(i);
+				if(indexed)
+				{
+					index.add(bitsWritten / BITS_PER_WORD, amtReadTotal, slot.rawLength);
+				}
+				bitsWritten += slot.write(outStream);
+				amtReadTotal += slot.rawLength;
+			}
+			numFilled = (slots.get(numFilled - 1).rawLength < blockSize) ? 0 : readBatch(in);
+		}
+		outStream.writeBits(BITS_PER_WORD, HuffBlockCodec.BLOCK_END);
+		bitsWritten += BITS_PER_WORD;
+		if(indexed)
+		{
+			bitsWritten += index.write(outStream, bitsWritten / BITS_PER_WORD);
+		}
+		in.close();
+		outStream.close();
+		return bitsWritten;
+	}
+
+	/**
+	 * sets how blocks are encoded
+	 */
+	public void setOptions(HuffBlockOptions options)
+	{
+		slots.setOptions(options);
+	}
+
+	/**
+	 * returns how many bytes the last compress call read
+	 */
+	public long getBytesRead()
+	{
+		return amtReadTotal;
+	}
+
+	/**
+	 * fills as many slots as possible from the input, returning
+	 * how many have at least one byte in them
+	 */
+	private int readBatch(InputStream in) throws IOException
+	{
+		int numFilled = 0;
+		boolean endOfInput = false;
+		while( (numFilled < slots.size()) && !endOfInput )
+		{
+			HuffBlockSlots.Slot slot = slots.get(numFilled);
+			slot.rawLength = HuffBlockCompressor.readBlock(in, slot.block);
+			if(slot.rawLength > 0)
+			{
+				numFilled++;
+			}
+			endOfInput = slot.rawLength < blockSize;
+		}
+		return numFilled;
+	}
+
+	/**
+	 * shuts down the threads, the compressor
+	 * can't be used after this
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * encodes a range of slots, splitting it in half
+	 * until each task has a single block
+	 */
+	private class EncodeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private int start;
+		private int end;
+
+		public EncodeTask(int start, int end)
+		{
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute()
+		{
+			if(end - start > 1)
+			{
+				int mid = (start + end) / 2;
+				invokeAll(new EncodeTask(start, mid), new EncodeTask(mid, end));
+			}
+			else
+			{
+				try {
+						slots.get(start).encode();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+}
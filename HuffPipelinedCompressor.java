@@ -0,0 +1,212 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * compresses into the same block format as HuffBlockCompressor with
+ * reading, encoding and writing each on their own threads so waiting
+ * on the disk or network doesn't hold up the encoding and the other
+ * way around. a reader thread fills blocks from the input, encoder
+ * threads encode whichever blocks are ready, and the calling thread
+ * writes them out in order. the stages pass blocks through a
+ * HuffBlockRing of slots made up front, so a slow stage holds up
+ * the ones before it instead of letting blocks pile up. the output
+ * is byte for byte what HuffBlockCompressor writes for the same
+ * block size
+ */
+public class HuffPipelinedCompressor implements IHuffFormats
+{
+	// how many slots each encoder gets, plus one each for the reader and writer
+	private static final int SLOTS_PER_ENCODER = 2;
+	private int blockSize;
+	private int numEncoders;
+	private ExecutorService pool;
+	private HuffBlockSlots slots;
+	private HuffBlockRing ring;
+	// how many bytes the last compress call read
+	private long amtReadTotal;
+
+	/**
+	 * compresses with blocks of the given size using the given number
+	 * of encoder threads and two slots for each of them
+	 */
+	public HuffPipelinedCompressor(int blockSize, int numEncoders)
+	{
+		this(blockSize, numEncoders, (numEncoders * SLOTS_PER_ENCODER) + 2);
+	}
+
+	/**
+	 * compresses with blocks of the given size using the given number
+	 * of encoder threads and blocks in flight at once
+	 */
+	public HuffPipelinedCompressor(int blockSize, int numEncoders, int numSlots)
+	{
+		if( (blockSize < HuffBlockCompressor.MIN_BLOCK_SIZE)
+			|| (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+		{
+			throw new IllegalArgumentException("invalid block size given.");
+		}
+		if(numEncoders < 1)
+		{
+			throw new IllegalArgumentException("invalid number of encoders given.");
+		}
+		this.blockSize = blockSize;
+		this.numEncoders = numEncoders;
+		ring = new HuffBlockRing(numSlots);
+		slots = new HuffBlockSlots(numSlots, blockSize);
+		// the reader and every encoder get a thread of their own
+		pool = Executors.newFixedThreadPool(numEncoders + 1, r -> {
+			Thread thread = new Thread(r, "huff-pipeline");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * compresses everything in the input to the output and
+	 * returns the number of bits written
+	 */
+	public long compress(InputStream in, OutputStream out) throws IOException
+	{
+		ring.reset();
+		amtReadTotal = 0;
+		Future<?>[] stages = new Future<?>[numEncoders + 1];
+		stages[0] = pool.submit(() -> readStage(in));
+		for(int i = 1; i < stages.length; i++)
+		{
+			stages[i] = pool.submit(() -> encodeStage());
+		}
+		long bitsWritten = 0;
+		try {
+				bitsWritten = writeStage(out);
+		} catch (IOException | RuntimeException | Error e) {
+			ring.fail(e);
+			// so a reader stuck waiting on the input gives up
+			closeQuietly(in);
+		} finally {
+			ring.awaitStages(stages);
+		}
+		ring.checkFailure();
+		in.close();
+		out.close();
+		return bitsWritten;
+	}
+
+	/**
+	 * sets how blocks are encoded
+	 */
+	public void setOptions(HuffBlockOptions options)
+	{
+		slots.setOptions(options);
+	}
+
+	/**
+	 * returns how many bytes the last compress call read
+	 */
+	public long getBytesRead()
+	{
+		return amtReadTotal;
+	}
+
+	/**
+	 * shuts down the threads, the compressor
+	 * can't be used after this
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * fills slots from the input in order until it runs out
+	 */
+	private void readStage(InputStream in)
+	{
+		try {
+				boolean endOfInput = false;
+				int curSlot = ring.nextToFill();
+				while( !endOfInput && (curSlot != -1) )
+				{
+					HuffBlockSlots.Slot slot = slots.get(curSlot);
+					slot.rawLength = HuffBlockCompressor.readBlock(in, slot.block);
+					if(slot.rawLength > 0)
+					{
+						ring.filled();
+					}
+					endOfInput = slot.rawLength < blockSize;
+					if(!endOfInput)
+					{
+						curSlot = ring.nextToFill();
+					}
+				}
+				ring.endOfInput();
+		} catch (Throwable e) {
+			ring.fail(e);
+		}
+	}
+
+	/**
+	 * encodes whichever filled slot is next until there are no more
+	 */
+	private void encodeStage()
+	{
+		try {
+				int curSlot = ring.nextToProcess();
+				while(curSlot != -1)
+				{
+					slots.get(curSlot).encode();
+					ring.processed(curSlot);
+					curSlot = ring.nextToProcess();
+				}
+		} catch (Throwable e) {
+			ring.fail(e);
+		}
+	}
+
+	/**
+	 * writes out the encoded slots in order, returning
+	 * the number of bits written
+	 */
+	private long writeStage(OutputStream out) throws IOException
+	{
+		HuffBitWriter outStream = new HuffBitWriter(out);
+		long bitsWritten = HuffBlockCompressor.writeStreamHeader(outStream, STORE_BLOCKS, blockSize);
+		try {
+				int curSlot = ring.nextToDrain();
+				while(curSlot != -1)
+				{
+					HuffBlockSlots.Slot slot = slots.get(curSlot);
+					bitsWritten += slot.write(outStream);
+					amtReadTotal += slot.rawLength;
+					ring.drained();
+					curSlot = ring.nextToDrain();
+				}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while compressing.");
+		}
+		ring.checkFailure();
+		outStream.writeBits(BITS_PER_WORD, HuffBlockCodec.BLOCK_END);
+		bitsWritten += BITS_PER_WORD;
+		outStream.flush();
+		return bitsWritten;
+	}
+
+	/**
+	 * closes the given stream, ignoring any trouble
+	 * since something already went wrong
+	 */
+	public static void closeQuietly(Closeable stream)
+	{
+		try {
+				stream.close();
+		} catch (IOException e) {
+			// the first failure is the one that gets thrown
+		}
+	}
+}
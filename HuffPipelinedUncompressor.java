@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * uncompresses the block format the way HuffPipelinedCompressor
+ * compresses it: a reader thread reads block payloads from the input,
+ * decoder threads decode whichever blocks are ready, and the calling
+ * thread writes them out in order. the stages pass blocks through a
+ * HuffBlockRing of slots made up front, so the input is only read as
+ * far ahead as there are slots. reads streams from HuffBlockCompressor,
+ * HuffPipelinedCompressor and HuffOutputStream, indexed or not
+ */
+public class HuffPipelinedUncompressor implements IHuffFormats
+{
+	// how many slots each decoder gets, plus one each for the reader and writer
+	private static final int SLOTS_PER_DECODER = 2;
+	private int numDecoders;
+	private ExecutorService pool;
+	private BlockSlot[] slots;
+	private HuffBlockRing ring;
+	// how many bytes the last uncompress call read
+	private long amtReadTotal;
+
+	/**
+	 * uncompresses using the given number of decoder
+	 * threads and two slots for each of them
+	 */
+	public HuffPipelinedUncompressor(int numDecoders)
+	{
+		this(numDecoders, (numDecoders * SLOTS_PER_DECODER) + 2);
+	}
+
+	/**
+	 * uncompresses using the given number of decoder
+	 * threads and blocks in flight at once
+	 */
+	public HuffPipelinedUncompressor(int numDecoders, int numSlots)
+	{
+		if(numDecoders < 1)
+		{
+			throw new IllegalArgumentException("invalid number of decoders given.");
+		}
+		this.numDecoders = numDecoders;
+		ring = new HuffBlockRing(numSlots);
+		// the buffers are made once the reader knows the block size
+		slots = new BlockSlot[numSlots];
+		for(int i = 0; i < slots.length; i++)
+		{
+			slots[i] = new BlockSlot();
+		}
+		// the reader and every decoder get a thread of their own
+		pool = Executors.newFixedThreadPool(numDecoders + 1, r -> {
+			Thread thread = new Thread(r, "huff-pipeline");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * uncompresses the compressed data in the input to the output
+	 * and returns the number of bits written
+	 */
+	public long uncompress(InputStream in, OutputStream out) throws IOException
+	{
+		ring.reset();
+		amtReadTotal = 0;
+		Future<?>[] stages = new Future<?>[numDecoders + 1];
+		stages[0] = pool.submit(() -> readStage(in));
+		for(int i = 1; i < stages.length; i++)
+		{
+			stages[i] = pool.submit(() -> decodeStage());
+		}
+		long bitsWritten = 0;
+		try {
+				bitsWritten = writeStage(out);
+		} catch (IOException | RuntimeException | Error e) {
+			ring.fail(e);
+			// so a reader stuck waiting on the input gives up
+			HuffPipelinedCompressor.closeQuietly(in);
+		} finally {
+			ring.awaitStages(stages);
+		}
+		ring.checkFailure();
+		in.close();
+		out.close();
+		return bitsWritten;
+	}
+
+	/**
+	 * returns how many compressed bytes the last uncompress call read,
+	 * which can be a little past the end block since reads are buffered
+	 */
+	public long getBytesRead()
+	{
+		return amtReadTotal;
+	}
+
+	/**
+	 * shuts down the threads, the uncompressor
+	 * can't be used after this
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * reads the header and then each block's header and payload
+	 * into slots in order until the end block
+	 */
+	private void readStage(InputStream in)
+	{
+		try {
+				HuffBitReader inStream = new HuffBitReader(in);
+				int blockSize = readStreamHeader(inStream);
+				int curSlot = ring.nextToFill();
+				while(curSlot != -1)
+				{
+					int blockType = inStream.readBits(BITS_PER_WORD);
+					if(blockType == HuffBlockCodec.BLOCK_END)
+					{
+						// the block index after the end block isn't needed to read in order
+						break;
+					}
+					BlockSlot slot = slots[curSlot];
+					readBlock(inStream, blockType, blockSize, slot);
+					ring.filled();
+					curSlot = ring.nextToFill();
+				}
+				// seen by the calling thread once it's waited on this stage
+				amtReadTotal = inStream.getBytesRead();
+				ring.endOfInput();
+		} catch (Throwable e) {
+			ring.fail(e);
+		}
+	}
+
+	/**
+	 * decodes whichever read slot is next until there are no more
+	 */
+	private void decodeStage()
+	{
+		try {
+				int curSlot = ring.nextToProcess();
+				while(curSlot != -1)
+				{
+					BlockSlot slot = slots[curSlot];
+					slot.codec.decodeBlock(slot.blockType, slot.payload, 0, slot.payloadSize,
+						slot.block, 0, slot.rawLength);
+					ring.processed(curSlot);
+					curSlot = ring.nextToProcess();
+				}
+		} catch (Throwable e) {
+			ring.fail(e);
+		}
+	}
+
+	/**
+	 * writes out the decoded slots in order, returning
+	 * the number of bits written
+	 */
+	private long writeStage(OutputStream out) throws IOException
+	{
+		long bitsWritten = 0;
+		try {
+				int curSlot = ring.nextToDrain();
+				while(curSlot != -1)
+				{
+					BlockSlot slot = slots[curSlot];
+					out.write(slot.block, 0, slot.rawLength);
+					bitsWritten += (long)slot.rawLength * BITS_PER_WORD;
+					ring.drained();
+					curSlot = ring.nextToDrain();
+				}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while uncompressing.");
+		}
+		ring.checkFailure();
+		out.flush();
+		return bitsWritten;
+	}
+
+	/**
+	 * reads the magic number, the header format and
+	 * the block size, returning the block size
+	 */
+	private int readStreamHeader(HuffBitReader inStream) throws IOException
+	{
+		if(inStream.readBits(BITS_PER_INT) != MAGIC_NUMBER)
+		{
+			throw new IllegalArgumentException("file given not a huffman file.");
+		}
+		int headerFormat = inStream.readBits(BITS_PER_INT);
+		if( (headerFormat != STORE_BLOCKS) && (headerFormat != STORE_INDEXED_BLOCKS) )
+		{
+			throw new IllegalArgumentException("file given not in the block format.");
+		}
+		int blockSize = inStream.readBits(BITS_PER_INT);
+		if( (blockSize < 1) || (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+		{
+			throw new IllegalStateException("invalid block size.");
+		}
+		return blockSize;
+	}
+
+	/**
+	 * reads the rest of a block's header and its payload into the
+	 * given slot, making its buffers bigger if they need to be
+	 */
+	private void readBlock(HuffBitReader inStream, int blockType, int blockSize, BlockSlot slot)
+		throws IOException
+	{
+		if(blockType == -1)
+		{
+			throw new IllegalStateException("unexpected end of file.");
+		}
+		if(!HuffBlockCodec.isBlockType(blockType))
+		{
+			throw new IllegalStateException("invalid block type.");
+		}
+		int rawLength = inStream.readBits(BITS_PER_INT);
+		int payloadSize = inStream.readBits(BITS_PER_INT);
+		HuffBlockUncompressor.checkBlockLengths(rawLength, payloadSize, blockSize);
+		if(slot.block.length < blockSize)
+		{
+			slot.block = new byte[blockSize];
+		}
+		if(slot.payload.length < payloadSize)
+		{
+			slot.payload = new byte[Math.max(payloadSize, slot.payload.length * 2)];
+		}
+		if(inStream.readBytes(slot.payload, 0, payloadSize) != payloadSize)
+		{
+			throw new IllegalStateException("unexpected end of file.");
+		}
+		slot.blockType = blockType;
+		slot.rawLength = rawLength;
+		slot.payloadSize = payloadSize;
+	}
+
+	/**
+	 * a block's payload, its own codec to decode it with,
+	 * the array it's decoded into and its header
+	 */
+	private static class BlockSlot
+	{
+		private byte[] block;
+		private byte[] payload;
+		private HuffBlockCodec codec;
+		private int blockType;
+		private int rawLength;
+		private int payloadSize;
+
+		public BlockSlot()
+		{
+			block = new byte[0];
+			payload = new byte[0];
+			codec = new HuffBlockCodec();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * what HuffSavingsEstimator guessed from a sample: the bits a whole
+ * file compress would save, give or take the error bound, and how
+ * much of the input the guess was made from. never changed after
+ */
+public class HuffSavingsEstimate
+{
+	private long bitsSaved;
+	private long errorBound;
+	private long bytesSampled;
+	private long totalBytes;
+
+	/**
+	 * makes an estimate from the given values
+	 */
+	public HuffSavingsEstimate(long bitsSaved, long errorBound, long bytesSampled, long totalBytes)
+	{
+		this.bitsSaved = bitsSaved;
+		this.errorBound = errorBound;
+		this.bytesSampled = bytesSampled;
+		this.totalBytes = totalBytes;
+	}
+
+	/**
+	 * returns about how many bits preprocessCompress would say
+	 * are saved, counting the header like it does
+	 */
+	public long getBitsSaved()
+	{
+		return bitsSaved;
+	}
+
+	/**
+	 * returns how far off getBitsSaved could be from sampling
+	 * alone, three standard errors so it's rarely more
+	 */
+	public long getErrorBound()
+	{
+		return errorBound;
+	}
+
+	/**
+	 * returns the fewest bits likely to be saved
+	 */
+	public long getLowerBound()
+	{
+		return bitsSaved - errorBound;
+	}
+
+	/**
+	 * returns the most bits likely to be saved
+	 */
+	public long getUpperBound()
+	{
+		return bitsSaved + errorBound;
+	}
+
+	/**
+	 * returns how many bytes the estimate was made from
+	 */
+	public long getBytesSampled()
+	{
+		return bytesSampled;
+	}
+
+	/**
+	 * returns how many bytes the whole input was
+	 */
+	public long getTotalBytes()
+	{
+		return totalBytes;
+	}
+
+	/**
+	 * returns a one line summary of the estimate
+	 */
+	public String toString()
+	{
+		return "saves " + bitsSaved + " bits +/- " + errorBound + " from " + bytesSampled
+			+ " of " + totalBytes + " bytes";
+	}
+}
@@ -0,0 +1,335 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * guesses what preprocessCompress would return from a sample of the
+ * input instead of every byte, for deciding whether a file is worth
+ * compressing at all. the input is split into strides and a run of
+ * bytes is read from each one, at its start or at a random spot in
+ * it, so a file on disk is only read where the sample is. code
+ * lengths come straight from the sample's counts with the array
+ * tree builder, so there are no tree nodes or code maps, and the
+ * counts are scaled up to the whole input to price the data. the
+ * runs are dealt out to groups in turn, each spread over the whole
+ * input, and how much the groups' bits a byte differ gives the
+ * error bound. length limits aren't taken into account
+ */
+public class HuffSavingsEstimator implements IHuffFormats
+{
+	// a run of this many bytes out of every stride by default, 1/64th
+	public static final int DEFAULT_RUN_LENGTH = 1 << 12;
+	public static final int DEFAULT_STRIDE = 1 << 18;
+	// the stride is cut down so no input gets fewer runs than this
+	public static final int MIN_RUNS = 1 << 8;
+	private static final int NUM_GROUPS = 32;
+	// how many standard errors wide the error bound is
+	private static final int ERROR_STDDEVS = 3;
+	// the same header sizes HuffCompressor counts
+	private final int NUM_BITS_IN_LEAF = 9;
+	private final int COUNT_WIDTH_BITS = 6;
+	private int runLength;
+	private int stride;
+	private boolean randomOffsets;
+	// the counts and number of bytes of each group
+	private long[][] groupCounts;
+	private long[] groupSizes;
+	// the counts of every group added up, plus pseudo eof
+	private long[] freqs;
+	private int[] codeLengths;
+	private HuffmanTreeBuilder builder;
+	// a run read from a file
+	private ByteBuffer run;
+
+	/**
+	 * samples DEFAULT_RUN_LENGTH bytes out of every DEFAULT_STRIDE
+	 */
+	public HuffSavingsEstimator()
+	{
+		this(DEFAULT_RUN_LENGTH, DEFAULT_STRIDE);
+	}
+
+	/**
+	 * samples runLength bytes out of every stride bytes
+	 */
+	public HuffSavingsEstimator(int runLength, int stride)
+	{
+		if( (runLength < 1) || (stride < runLength) )
+		{
+			throw new IllegalArgumentException("invalid run length or stride given.");
+		}
+		this.runLength = runLength;
+		this.stride = stride;
+		randomOffsets = false;
+		groupCounts = new long[NUM_GROUPS][ALPH_SIZE];
+		groupSizes = new long[NUM_GROUPS];
+		freqs = new long[ALPH_SIZE + 1];
+		codeLengths = new int[ALPH_SIZE + 1];
+		builder = new HuffmanTreeBuilder();
+		run = ByteBuffer.allocate(runLength);
+	}
+
+	/**
+	 * sets whether each run is read from a random spot in its stride
+	 * instead of the start, for data with a pattern that lines up
+	 * with the stride. the spots are the same every call
+	 */
+	public void setRandomOffsets(boolean randomOffsets)
+	{
+		this.randomOffsets = randomOffsets;
+	}
+
+	/**
+	 * estimates the savings of everything left in src, which
+	 * isn't moved, with the given header format
+	 */
+	public HuffSavingsEstimate estimate(ByteBuffer src, int headerFormat)
+	{
+		checkHeaderFormat(headerFormat);
+		clearGroups();
+		int length = src.remaining();
+		int curStride = strideFor(length);
+		Random random = new Random(length);
+		ByteBuffer view = src.duplicate();
+		int runNum = 0;
+		for(long strideStart = 0; strideStart < length; strideStart += curStride)
+		{
+			int curRunLength = curRunLength(strideStart, length);
+			int start = src.position() + (int)runStart(strideStart, curStride, length, random);
+			if(src.hasArray())
+			{
+				addRun(runNum, src.array(), src.arrayOffset() + start, curRunLength);
+			}
+			else
+			{
+				view.limit(start + curRunLength);
+				view.position(start);
+				view.get(run.array(), 0, curRunLength);
+				addRun(runNum, run.array(), 0, curRunLength);
+			}
+			runNum++;
+		}
+		return makeEstimate(length, headerFormat);
+	}
+
+	/**
+	 * estimates the savings of the given file with the given header
+	 * format, reading only the runs of the sample
+	 */
+	public HuffSavingsEstimate estimate(Path in, int headerFormat) throws IOException
+	{
+		checkHeaderFormat(headerFormat);
+		clearGroups();
+		try (FileChannel channel = FileChannel.open(in, StandardOpenOption.READ)) {
+			long length = channel.size();
+			int curStride = strideFor(length);
+			Random random = new Random(length);
+			int runNum = 0;
+			for(long strideStart = 0; strideStart < length; strideStart += curStride)
+			{
+				int curRunLength = curRunLength(strideStart, length);
+				long start = runStart(strideStart, curStride, length, random);
+				run.clear();
+				run.limit(curRunLength);
+				while(run.hasRemaining())
+				{
+					if(channel.read(run, start + run.position()) == -1)
+					{
+						throw new IllegalStateException("unexpected end of file.");
+					}
+				}
+				addRun(runNum, run.array(), 0, curRunLength);
+				runNum++;
+			}
+			return makeEstimate(length, headerFormat);
+		}
+	}
+
+	/**
+	 * returns the stride to use for an input of the given length,
+	 * small enough for MIN_RUNS runs. short inputs get a stride of
+	 * one run, which reads every byte
+	 */
+	private int strideFor(long length)
+	{
+		long strideForMinRuns = length / MIN_RUNS;
+		return (int)Math.max(runLength, Math.min(stride, strideForMinRuns));
+	}
+
+	/**
+	 * returns how long the run in the stride starting
+	 * at strideStart is, shorter if the input ends first
+	 */
+	private int curRunLength(long strideStart, long length)
+	{
+		return (int)Math.min(runLength, length - strideStart);
+	}
+
+	/**
+	 * returns where the run in the stride starting at strideStart
+	 * begins, at a random spot if randomOffsets is set
+	 */
+	private long runStart(long strideStart, int curStride, long length, Random random)
+	{
+		long strideLength = Math.min(curStride, length - strideStart);
+		int curRunLength = curRunLength(strideStart, length);
+		if( !randomOffsets || (strideLength == curRunLength) )
+		{
+			return strideStart;
+		}
+		return strideStart + random.nextInt((int)(strideLength - curRunLength + 1));
+	}
+
+	/**
+	 * counts the given run into the group it's dealt to
+	 */
+	private void addRun(int runNum, byte[] bytes, int off, int len)
+	{
+		long[] counts = groupCounts[runNum % NUM_GROUPS];
+		for(int i = off; i < off + len; i++)
+		{
+			counts[bytes[i] & 0xff]++;
+		}
+		groupSizes[runNum % NUM_GROUPS] += len;
+	}
+
+	/**
+	 * empties the groups for a new sample
+	 */
+	private void clearGroups()
+	{
+		for(int i = 0; i < NUM_GROUPS; i++)
+		{
+			Arrays.fill(groupCounts[i], 0);
+		}
+		Arrays.fill(groupSizes, 0);
+	}
+
+	/**
+	 * makes codes from the sample's counts and prices an input
+	 * of the given length with them
+	 */
+	private HuffSavingsEstimate makeEstimate(long length, int headerFormat)
+	{
+		long sampleSize = 0;
+		Arrays.fill(freqs, 0);
+		for(int i = 0; i < NUM_GROUPS; i++)
+		{
+			sampleSize += groupSizes[i];
+			for(int j = 0; j < ALPH_SIZE; j++)
+			{
+				freqs[j] += groupCounts[i][j];
+			}
+		}
+		freqs[PSEUDO_EOF] = 1;
+		Arrays.fill(codeLengths, 0);
+		builder.getCodeLengths(builder.buildWithHeap(freqs), codeLengths);
+		// pseudo eof is only alone for an empty input, and the
+		// canonical format still gives it a one bit code
+		if( (headerFormat == STORE_CANONICAL) && (builder.getNumLeaves() == 1) )
+		{
+			codeLengths[PSEUDO_EOF] = 1;
+		}
+		// how many bytes of input each sampled byte stands for
+		double scale = (sampleSize == 0) ? 0 : length / (double)sampleSize;
+		long sampleBits = codeBits(freqs);
+		double newBits = (BITS_PER_INT + BITS_PER_INT) + headerBits(headerFormat, scale)
+			+ (sampleBits * scale) + codeLengths[PSEUDO_EOF];
+		long bitsSaved = (length * BITS_PER_WORD) - Math.round(newBits);
+		return new HuffSavingsEstimate(bitsSaved, errorBound(sampleBits, sampleSize, length),
+			sampleSize, length);
+	}
+
+	/**
+	 * returns how many bits the codes take for the
+	 * bytes counted in counts, not pseudo eof
+	 */
+	private long codeBits(long[] counts)
+	{
+		long bits = 0;
+		for(int i = 0; i < ALPH_SIZE; i++)
+		{
+			bits += counts[i] * codeLengths[i];
+		}
+		return bits;
+	}
+
+	/**
+	 * returns ERROR_STDDEVS standard errors of the data's bits, found
+	 * from how far each group's bits a byte are from the whole
+	 * sample's. nothing is left to guess when every byte was sampled
+	 */
+	private long errorBound(long sampleBits, long sampleSize, long length)
+	{
+		if(sampleSize == length)
+		{
+			return 0;
+		}
+		double bitsPerByte = sampleBits / (double)sampleSize;
+		double sumOfSquares = 0;
+		int numGroups = 0;
+		for(int i = 0; i < NUM_GROUPS; i++)
+		{
+			if(groupSizes[i] > 0)
+			{
+				double diff = (codeBits(groupCounts[i]) / (double)groupSizes[i]) - bitsPerByte;
+				sumOfSquares += diff * diff;
+				numGroups++;
+			}
+		}
+		// the sample is never this small unless the input is tiny
+		if(numGroups < 2)
+		{
+			return length * BITS_PER_WORD;
+		}
+		double variance = sumOfSquares / (numGroups * (numGroups - 1));
+		// the less of the input is left out, the less the sample can be off
+		double unsampled = 1 - (sampleSize / (double)length);
+		double standardError = length * Math.sqrt(variance * unsampled);
+		return (long)Math.ceil(ERROR_STDDEVS * standardError);
+	}
+
+	/**
+	 * returns how many bits the header of the given
+	 * format takes for the current codes
+	 */
+	private long headerBits(int headerFormat, double scale)
+	{
+		if(headerFormat == STORE_COUNTS)
+		{
+			return BITS_PER_INT * ALPH_SIZE;
+		}
+		if(headerFormat == STORE_LARGE_COUNTS)
+		{
+			long maxCount = 0;
+			for(int i = 0; i < ALPH_SIZE; i++)
+			{
+				maxCount = Math.max(maxCount, Math.round(freqs[i] * scale));
+			}
+			int countWidth = Long.SIZE - Long.numberOfLeadingZeros(maxCount);
+			return COUNT_WIDTH_BITS + ((long)ALPH_SIZE * countWidth);
+		}
+		if(headerFormat == STORE_TREE)
+		{
+			return BITS_PER_INT + (builder.getNumLeaves() * NUM_BITS_IN_LEAF) + builder.getNumNodes();
+		}
+		return HuffCanonicalCodes.headerBits(codeLengths);
+	}
+
+	/**
+	 * makes sure the given header format is one of
+	 * the whole file formats preprocessCompress takes
+	 */
+	private void checkHeaderFormat(int headerFormat)
+	{
+		if( (headerFormat != STORE_COUNTS) && (headerFormat != STORE_TREE)
+			&& (headerFormat != STORE_CANONICAL) && (headerFormat != STORE_LARGE_COUNTS) )
+		{
+			throw new IllegalArgumentException("invalid header format given.");
+		}
+	}
+}
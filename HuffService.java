@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * compresses and uncompresses for any number of threads at once.
+ * counting, building the codes and encoding all happen in one
+ * compress call using the block format, so there's no preprocess
+ * step to keep track of between calls. the settings can't change
+ * once it's made, and every thread gets its own compressor and
+ * uncompressor the first time it uses the service, which it keeps
+ * and reuses so a thread pool doesn't make new buffers, tables or
+ * trees for every request. each thread holds on to about two
+ * blocks' worth of memory while the service is in use. the contexts
+ * don't point back at the service, so once it's dropped their
+ * memory is freed when each thread next cleans up its thread
+ * locals, or when the thread ends. payloads that
+ * are already in memory can skip streams altogether with the buffer
+ * and array calls, which write the same format
+ */
+public class HuffService implements IHuffFormats
+{
+	private final int blockSize;
+	// the scratch state of each thread that has used the service
+	private final ThreadLocal<Context> contexts;
+
+	/**
+	 * compresses with blocks of HuffBlockCompressor.DEFAULT_BLOCK_SIZE
+	 * bytes and plain huffman blocks only
+	 */
+	public HuffService()
+	{
+		this(HuffBlockCompressor.DEFAULT_BLOCK_SIZE, HuffBlockOptions.DEFAULT);
+	}
+
+	/**
+	 * compresses with blocks of the given size encoded with the given options
+	 */
+	public HuffService(int blockSize, HuffBlockOptions options)
+	{
+		if( (blockSize < HuffBlockCompressor.MIN_BLOCK_SIZE)
+			|| (blockSize > HuffBlockCodec.MAX_BLOCK_SIZE) )
+		{
+			throw new IllegalArgumentException("invalid block size given.");
+		}
+		// checked here instead of on whichever thread makes a context first
+		if(options == null)
+		{
+			throw new IllegalArgumentException("no block options given.");
+		}
+		this.blockSize = blockSize;
+		contexts = ThreadLocal.withInitial(() -> new Context(blockSize, options));
+	}
+
+	/**
+	 * compresses everything in the input to the output and returns
+	 * the number of bits written. both streams are closed
+	 */
+	public long compress(InputStream in, OutputStream out) throws IOException
+	{
+		return contexts.get().compressor.compress(in, out);
+	}
+
+	/**
+	 * uncompresses a file in any of the formats, returning
+	 * the number of bits written. both streams are closed
+	 */
+	public long uncompress(InputStream in, OutputStream out) throws IOException
+	{
+		return contexts.get().uncompressor.uncompressLarge(in, out);
+	}
+
+	/**
+	 * returns the most bytes compressing srcLength bytes in memory
+	 * can take, so the output can be made before compressing
+	 */
+	public int maxCompressedLength(int srcLength)
+	{
+		return HuffBufferCodec.maxCompressedLength(srcLength, blockSize);
+	}
+
+	/**
+	 * compresses everything left in src into dst, moving both up past
+	 * what was used and returning how many bytes were put in dst. dst
+	 * needs maxCompressedLength(src.remaining()) bytes of room to be
+	 * sure it won't throw BufferOverflowException
+	 */
+	public int compress(ByteBuffer src, ByteBuffer dst) throws IOException
+	{
+		return contexts.get().bufferCodec.compress(src, dst);
+	}
+
+	/**
+	 * compresses len bytes of src starting at off into dst starting
+	 * at dstOff, returning how many bytes were put in dst
+	 */
+	public int compress(byte[] src, int off, int len, byte[] dst, int dstOff) throws IOException
+	{
+		return compress(ByteBuffer.wrap(src, off, len), ByteBuffer.wrap(dst, dstOff, dst.length - dstOff));
+	}
+
+	/**
+	 * returns all of src compressed
+	 */
+	public byte[] compress(byte[] src) throws IOException
+	{
+		byte[] dst = new byte[maxCompressedLength(src.length)];
+		return Arrays.copyOf(dst, compress(src, 0, src.length, dst, 0));
+	}
+
+	/**
+	 * returns how many bytes the compressed data left
+	 * in src holds once uncompressed, without moving src
+	 */
+	public long uncompressedLength(ByteBuffer src)
+	{
+		return HuffBufferCodec.uncompressedLength(src);
+	}
+
+	/**
+	 * uncompresses the data left in src, which has to be in the block
+	 * format, into dst, moving both up past what was used and returning
+	 * how many bytes were put in dst. dst needs uncompressedLength(src)
+	 * bytes of room to be sure it won't throw BufferOverflowException
+	 */
+	public int uncompress(ByteBuffer src, ByteBuffer dst) throws IOException
+	{
+		return contexts.get().bufferCodec.uncompress(src, dst);
+	}
+
+	/**
+	 * uncompresses len bytes of src starting at off into dst starting
+	 * at dstOff, returning how many bytes were put in dst
+	 */
+	public int uncompress(byte[] src, int off, int len, byte[] dst, int dstOff) throws IOException
+	{
+		return uncompress(ByteBuffer.wrap(src, off, len), ByteBuffer.wrap(dst, dstOff, dst.length - dstOff));
+	}
+
+	/**
+	 * returns all of src uncompressed
+	 */
+	public byte[] uncompress(byte[] src) throws IOException
+	{
+		long rawLength = uncompressedLength(ByteBuffer.wrap(src));
+		if(rawLength > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("data too big for one array.");
+		}
+		byte[] dst = new byte[(int)rawLength];
+		uncompress(src, 0, src.length, dst, 0);
+		return dst;
+	}
+
+	/**
+	 * the compressors and uncompressors one thread uses, static so
+	 * a thread's context doesn't keep the service it came from alive
+	 */
+	private static class Context
+	{
+		private HuffBlockCompressor compressor;
+		private HuffUncompressor uncompressor;
+		private HuffBufferCodec bufferCodec;
+
+		public Context(int blockSize, HuffBlockOptions options)
+		{
+			compressor = new HuffBlockCompressor(blockSize);
+			compressor.setOptions(options);
+			uncompressor = new HuffUncompressor();
+			bufferCodec = new HuffBufferCodec(blockSize);
+			bufferCodec.setOptions(options);
+		}
+	}
+}
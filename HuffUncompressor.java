@@ -2,45 +2,133 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.HashMap;
 import java.util.TreeMap;
 
-public class HuffUncompressor implements IHuffConstants
+public class HuffUncompressor implements IHuffFormats
 {
 	private HuffmanCodeTree huffer;
+	private HuffDecodeTable decodeTable;
+	// kept between calls so their buffers and tables are only made once
+	private HuffBitReader inStream;
+	private HuffBlockUncompressor blockUncomp;
+	private byte[] outBuffer;
+	// the loaded dictionaries by id, and a table for the last one
+	// used so records with the same dictionary don't rebuild it
+	private HashMap<Integer, HuffDictionary> dictionaries;
+	private HuffDecodeTable dictionaryTable;
+	private HuffDictionary dictionaryInTable;
+	// the table the data is decoded with, set by the header
+	private HuffDecodeTable dataTable;
+	private HuffMetricsRecorder metrics;
+	// the metrics of the last uncompress call
+	private HuffMetrics lastMetrics;
+	// how many bits give the width of the counts in the large counts header
+	private final int COUNT_WIDTH_BITS = 6;
+	// how many decoded bytes are written out at a time
+	private final int OUT_BUFFER_SIZE = 1 << 16;
 	
 	public HuffUncompressor()
 	{
 		huffer = new HuffmanCodeTree();
+		decodeTable = new HuffDecodeTable();
+		inStream = new HuffBitReader(new byte[0], 0, 0);
+		blockUncomp = null;
+		outBuffer = new byte[OUT_BUFFER_SIZE];
+		dictionaries = new HashMap<Integer, HuffDictionary>();
+		dictionaryTable = new HuffDecodeTable();
+		dictionaryInTable = null;
+		dataTable = decodeTable;
+		metrics = new HuffMetricsRecorder();
+		lastMetrics = null;
 	}
 	
 	/**
 	 * uncompress the given file based on the 
-	 * header format it uses
+	 * header format it uses, returning the number
+	 * of bits written capped to fit in an int
 	 */
-	public int uncompress(BitInputStream inStream, BitOutputStream outStream)
+	public int uncompress(InputStream in, OutputStream out) throws IOException
+	{
+		return HuffCompressor.toIntBits(uncompressLarge(in, out));
+	}
+	
+	/**
+	 * uncompress the given file based on the header format
+	 * it uses, returning the number of bits written as a long
+	 */
+	public long uncompressLarge(InputStream in, OutputStream out) throws IOException
 	{
         reset();
+		metrics.begin();
+		long phaseStart = metrics.startPhase();
+		inStream.reset(in);
 		checkMagicNumber(inStream);
-		handleHeader(inStream);
-		int bitsWritten = writeOutOriginalData(inStream, outStream);
+		long bitsWritten;
+		int headerFormat = handleHeader(inStream);
+		metrics.endPhase(HuffMetrics.HEADER, phaseStart);
+		phaseStart = metrics.startPhase();
+		if( (headerFormat == STORE_BLOCKS) || (headerFormat == STORE_INDEXED_BLOCKS) )
+		{
+			// the block index isn't needed to read the blocks in order
+			if(blockUncomp == null)
+			{
+				blockUncomp = new HuffBlockUncompressor();
+			}
+			bitsWritten = blockUncomp.uncompress(inStream, out);
+			out.close();
+		}
+		else if(headerFormat == STORE_ADAPTIVE)
+		{
+			HuffAdaptiveUncompressor adaptiveUncomp = new HuffAdaptiveUncompressor();
+			bitsWritten = adaptiveUncomp.uncompress(inStream, out);
+			out.close();
+		}
+		else
+		{
+			bitsWritten = writeOutOriginalData(inStream, out);
+			out.close();
+		}
 		inStream.close();
-		outStream.close();
+		metrics.endPhase(HuffMetrics.DECODE, phaseStart);
+		metrics.setBytes(inStream.getBytesRead(), bitsWritten / BITS_PER_WORD);
+		// so the finished stream isn't held on to
+		inStream.reset(new byte[0], 0, 0);
+		lastMetrics = metrics.snapshot(HuffMetrics.UNCOMPRESS);
 		return bitsWritten;
 	}
 	
+	/**
+	 * loads a dictionary so files that name its id can be uncompressed
+	 */
+	public void addDictionary(HuffDictionary dictionary)
+	{
+		dictionaries.put(dictionary.getId(), dictionary);
+	}
+	
+	/**
+	 * returns the metrics of the last uncompress call,
+	 * or null if there hasn't been one
+	 */
+	public HuffMetrics getMetrics()
+	{
+		return lastMetrics;
+	}
+	
 	/**
 	 * resets instance varibale before uncompressing	
 	 */
 	private void reset()
 	{
 		huffer.reset();
+		dataTable = decodeTable;
 	}
 	
 	/**
 	 * makes sure the file we are reading
 	 * is a huffman file	
 	 */
-	private void checkMagicNumber(BitInputStream inStream)
+	private void checkMagicNumber(HuffBitReader inStream)
 	{
 		int magicBits = 0;
 		try {
@@ -56,9 +144,10 @@ public class HuffUncompressor implements IHuffConstants
 	
 	/**
 	 * processes the compressed header info before
-	 * uncompressing the actual data
+	 * uncompressing the actual data, returning 
+	 * the header format
 	 */
-	private void handleHeader(BitInputStream inStream)
+	private int handleHeader(HuffBitReader inStream)
 	{
 		int headerBits = 0;
 		try {
@@ -69,22 +158,81 @@ public class HuffUncompressor implements IHuffConstants
 		if(headerBits == STORE_COUNTS)
 		{
 			huffer.buildHuffmanCodeTree(getFreqArr(inStream));
+			decodeTable.build(huffer.getRoot());
+		}
+		else if(headerBits == STORE_LARGE_COUNTS)
+		{
+			huffer.buildHuffmanCodeTree(getLargeFreqArr(inStream));
+			decodeTable.build(huffer.getRoot());
 		}
 		else if(headerBits == STORE_TREE)
 		{
 			readStfKickoff(inStream);
+			decodeTable.build(huffer.getRoot());
 		}
-		else
+		else if(headerBits == STORE_CANONICAL)
+		{
+			readCanonical(inStream);
+		}
+		else if(headerBits == STORE_DICTIONARY)
+		{
+			readDictionaryId(inStream);
+		}
+		else if( (headerBits != STORE_BLOCKS) && (headerBits != STORE_INDEXED_BLOCKS)
+			&& (headerBits != STORE_ADAPTIVE) )
 		{
 			throw new IllegalArgumentException("file has invalid header type.");
 		}
+		return headerBits;
+	}
+	
+	/**
+	 * reads the id of the dictionary the file was compressed with
+	 * and decodes with its table, building it only if a different
+	 * dictionary was used last
+	 */
+	private void readDictionaryId(HuffBitReader inStream)
+	{
+		long id = -1;
+		try {
+				id = inStream.readLongBits(BITS_PER_INT);
+        } catch (IOException e) {
+            System.out.println("Error / Exception while reading file for uncompressing.");
+        }
+		HuffDictionary dictionary = dictionaries.get((int)id);
+		if( (id == -1) || (dictionary == null) )
+		{
+			throw new IllegalStateException("file uses a dictionary that isn't loaded.");
+		}
+		if(dictionary != dictionaryInTable)
+		{
+			dictionaryTable.build(dictionary.getCodeLengths());
+			dictionaryInTable = dictionary;
+		}
+		dataTable = dictionaryTable;
+	}
+	
+	/**
+	 * reads the code lengths given by the canonical header
+	 * and builds the decode table straight from them
+	 */
+	private void readCanonical(HuffBitReader inStream)
+	{
+		// the plus one is to hold pseudo eof in index 256
+		int[] codeLengths = new int[ALPH_SIZE + 1];
+		try {
+				HuffCanonicalCodes.readLengths(inStream, codeLengths);
+        } catch (IOException e) {
+            System.out.println("Error / Exception while reading file for uncompressing.");
+        }
+		decodeTable.build(codeLengths);
 	}
 	
 	/**
 	 * reads the frequencies given by the scf
 	 * header and puts them into an array
 	 */
-	private int[] getFreqArr(BitInputStream inStream)
+	private int[] getFreqArr(HuffBitReader inStream)
 	{
 		int index = 0;
 		int curBits = 0;
@@ -111,12 +259,41 @@ public class HuffUncompressor implements IHuffConstants
 		return asciiVals;
 	}
 	
+	/**
+	 * reads the width of the counts and then the counts
+	 * given by the large counts header into an array
+	 */
+	private long[] getLargeFreqArr(HuffBitReader inStream)
+	{
+		// the plus one is to hold pseudo eof in index 256
+		long[] freqs = new long[ALPH_SIZE + 1];
+		try {
+				int countWidth = inStream.readBits(COUNT_WIDTH_BITS);
+				if(countWidth == -1)
+				{
+					throw new IllegalStateException("unexpected end of file");
+				}
+				for(int i = 0; i < ALPH_SIZE; i++)
+				{
+					freqs[i] = inStream.readLongBits(countWidth);
+					if(freqs[i] == -1)
+					{
+						throw new IllegalStateException("unexpected end of file");
+					}
+				}
+        } catch (IOException e) {
+            System.out.println("Error / Exception while reading file for uncompressing.");
+        }
+		freqs[PSEUDO_EOF]++;
+		return freqs;
+	}
+	
 	/**
 	 * a kickoff method for the actual recursive
 	 * method tgat will reconstruct the huffmam
 	 * tree from the info in the file	
 	 */
-	private void readStfKickoff(BitInputStream inStream)
+	private void readStfKickoff(HuffBitReader inStream)
 	{
 		int treeBitLength = 0;
 		try {
@@ -143,7 +320,7 @@ public class HuffUncompressor implements IHuffConstants
 	 * uses a pre order traversal-like method
 	 * to reconstrcut the huffman tree	
 	 */
-	private TreeNode readStf(BitInputStream inStream, int[] bitsReadTracker)
+	private TreeNode readStf(HuffBitReader inStream, int[] bitsReadTracker)
 	{
 		int internalNode = 0;
 		int leafNode = 1;
@@ -186,51 +363,21 @@ public class HuffUncompressor implements IHuffConstants
 	}
 	
 	/**
-	 * "walks the tree" to go from the compressed
-	 * codes back to the original data	
+	 * decodes the compressed codes back to the original data, several
+	 * bytes at a time into a buffer that's written out when full.
+	 * the data starts on a byte boundary so it skips BitOutputStream
 	 */
-	private int writeOutOriginalData(BitInputStream inStream, 
-		BitOutputStream outStream)
+	private long writeOutOriginalData(HuffBitReader inStream, OutputStream out) throws IOException
 	{
-		int bitCount = 0;
-		boolean foundEof = false;
-		while(!foundEof)
+		long bitCount = 0;
+		boolean done = false;
+		while(!done)
 		{
-			int left = 0;
-			TreeNode node = huffer.getRoot();
-			while(!node.isLeaf())
-			{
-				// didn't want to make -1, 0, or 1 because those hold meaning
-				int curBit = -2;
-				try {
-						curBit = inStream.readBits(1);
-		        } catch (IOException e) {
-		            System.out.println("Error / Exception while reading file for uncompressing.");
-		        }
-				if(curBit == -1)
-				{
-					throw new IllegalStateException("no psuedo eof value present in file");
-				}
-				if(curBit == left)
-				{
-					node = node.getLeft();
-				}
-				else
-				{
-					// reached here means bit is a 0
-					node = node.getRight();
-				}
-			}
-			if(node.getValue() == PSEUDO_EOF)
-			{
-				foundEof = true;
-			}
-			else
-			{
-				outStream.writeBits(BITS_PER_WORD, node.getValue());
-				bitCount += BITS_PER_WORD;	
-			}
+			int amtDecoded = dataTable.decodeBytes(inStream, outBuffer, 0, outBuffer.length);
+			out.write(outBuffer, 0, amtDecoded);
+			bitCount += (long)amtDecoded * BITS_PER_WORD;
+			done = dataTable.reachedEnd();
 		}
 		return bitCount;
 	}
-}
\ No newline at end of file
+}
@@ -1,19 +1,41 @@
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.TreeMap;
 
-public class HuffmanCodeTree
+public class HuffmanCodeTree implements IHuffConstants
 {
 	final String LEFT = "0";
 	final String RIGHT = "1";
+	// the longest code that fits in the codeBits table
+	public static final int MAX_TABLE_CODE_LENGTH = 32;
+	// the ways the tree can be built, all of them make the same tree
+	public static final int PRIORITY_Q_BUILDER = 0;
+	public static final int HEAP_BUILDER = 1;
+	public static final int TWO_QUEUE_BUILDER = 2;
 	private int numLeaves;
 	private int totalNodes;
 	private TreeNode root;
 	// pq short for priority queue
-	private PriorityQ<E> pq;
+	private PriorityQ<TreeNode> pq;
+	private HuffmanTreeBuilder builder;
+	private int builderType;
+	// the frequencies widened for the builder
+	private long[] freqs;
 	private TreeMap<Integer, Integer> freqMap;
 	private HashMap<Integer, String> codeMap;
+	// the new codes indexed by value, right aligned, with
+	// their lengths in codeLength
+	private int[] codeBits;
+	private byte[] codeLength;
+	private int maxCodeLength;
+	// the code lengths as ints once the codes are canonical
+	private int[] canonicalLengths;
+	// the longest code allowed, 0 for no limit
+	private int maxLengthLimit;
+	// how many more bits the limit costs the last tree built
+	private long lengthLimitCost;
 	
 	/**
 	 * intialzies the instance variables	
@@ -23,9 +45,18 @@ public class HuffmanCodeTree
 		numLeaves = 0;
 		totalNodes = 0;
 		root = null;
-		pq = new PriorityQ<E>();
+		pq = new PriorityQ<TreeNode>();
+		builder = new HuffmanTreeBuilder();
+		builderType = HEAP_BUILDER;
+		freqs = new long[ALPH_SIZE + 1];
 		freqMap = new TreeMap<Integer, Integer>();
 		codeMap = new HashMap<Integer, String>();
+		codeBits = new int[ALPH_SIZE + 1];
+		codeLength = new byte[ALPH_SIZE + 1];
+		maxCodeLength = 0;
+		canonicalLengths = new int[ALPH_SIZE + 1];
+		maxLengthLimit = 0;
+		lengthLimitCost = 0;
 	}
 	
 	/**
@@ -36,14 +67,186 @@ public class HuffmanCodeTree
 	public void buildHuffmanCodeTree(int[] asciiVals)
 	{
 		makeFreqMap(asciiVals);
-		enqInitialNodes();
-		numLeaves = pq.size();
-		totalNodes += numLeaves;
-		buildTree();
-		root = (TreeNode)pq.first();
+		if(codeBits.length < asciiVals.length)
+		{
+			codeBits = new int[asciiVals.length];
+			codeLength = new byte[asciiVals.length];
+		}
+		if(builderType == PRIORITY_Q_BUILDER)
+		{
+			enqInitialNodes();
+			numLeaves = pq.size();
+			totalNodes += numLeaves;
+			buildTree();
+			root = pq.first();
+		}
+		else
+		{
+			buildTreeFromArrays(asciiVals);
+		}
+		makeCodeMapKickoff();
+		if( (maxLengthLimit != 0) && (maxCodeLength > maxLengthLimit) )
+		{
+			long[] frequencies = new long[asciiVals.length];
+			for(int i = 0; i < asciiVals.length; i++)
+			{
+				frequencies[i] = asciiVals[i];
+			}
+			limitCodeLengths(frequencies);
+		}
+	}
+	
+	/**
+	 * builds the tree with the array based builder
+	 * and copies it into TreeNodes	
+	 */
+	private void buildTreeFromArrays(int[] asciiVals)
+	{
+		if(freqs.length != asciiVals.length)
+		{
+			freqs = new long[asciiVals.length];
+		}
+		for(int i = 0; i < asciiVals.length; i++)
+		{
+			freqs[i] = asciiVals[i];
+		}
+		buildTreeFromLongs(freqs);
+	}
+	
+	/**
+	 * builds the tree from 64 bit frequencies, for inputs whose
+	 * counts don't fit in an int. the priority queue only takes int
+	 * priorities so the heap builder is used in its place, and the
+	 * frequency map isn't made	
+	 */
+	public void buildHuffmanCodeTree(long[] frequencies)
+	{
+		if(codeBits.length < frequencies.length)
+		{
+			codeBits = new int[frequencies.length];
+			codeLength = new byte[frequencies.length];
+		}
+		buildTreeFromLongs(frequencies);
 		makeCodeMapKickoff();
+		if( (maxLengthLimit != 0) && (maxCodeLength > maxLengthLimit) )
+		{
+			limitCodeLengths(frequencies);
+		}
+	}
+	
+	/**
+	 * runs the array based builder on the given frequencies
+	 * and copies the tree into TreeNodes	
+	 */
+	private void buildTreeFromLongs(long[] frequencies)
+	{
+		int rootNum;
+		if(builderType == TWO_QUEUE_BUILDER)
+		{
+			rootNum = builder.buildWithTwoQueues(frequencies);
+		}
+		else
+		{
+			rootNum = builder.buildWithHeap(frequencies);
+		}
+		numLeaves = builder.getNumLeaves();
+		totalNodes = builder.getNumNodes();
+		root = builder.toTreeNode(rootNum);
+	}
+	
+	/**
+	 * picks which builder makes the tree, one of
+	 * PRIORITY_Q_BUILDER, HEAP_BUILDER or TWO_QUEUE_BUILDER	
+	 */
+	public void setBuilderType(int type)
+	{
+		if( (type != PRIORITY_Q_BUILDER) && (type != HEAP_BUILDER) && (type != TWO_QUEUE_BUILDER) )
+		{
+			throw new IllegalArgumentException("invalid builder type given.");
+		}
+		builderType = type;
 	}
 
+	/**
+	 * caps how long the codes can get, 0 for no limit. trees with
+	 * longer codes are swapped for the best codes under the limit,
+	 * in canonical order, and the tree is rebuilt to match them	
+	 */
+	public void setMaxCodeLength(int limit)
+	{
+		if( (limit < 0) || (limit > MAX_TABLE_CODE_LENGTH) )
+		{
+			throw new IllegalArgumentException("invalid max code length given.");
+		}
+		maxLengthLimit = limit;
+	}
+	
+	/**
+	 * returns how many more bits the codes of the last tree built
+	 * take because of the length limit, 0 if it didn't apply	
+	 */
+	public long getLengthLimitCost()
+	{
+		return lengthLimitCost;
+	}
+	
+	/**
+	 * replaces the codes with the best ones no longer than the
+	 * limit and rebuilds the tree and code map from them	
+	 */
+	private void limitCodeLengths(long[] frequencies)
+	{
+		int[] oldLengths = new int[frequencies.length];
+		for(int i = 0; i < frequencies.length; i++)
+		{
+			oldLengths[i] = codeLength[i];
+		}
+		int[] newLengths = new int[frequencies.length];
+		HuffLengthLimiter.limitLengths(frequencies, maxLengthLimit, newLengths);
+		lengthLimitCost = HuffLengthLimiter.extraBits(frequencies, oldLengths, newLengths);
+		HuffCanonicalCodes.assignCodes(newLengths, codeBits);
+		maxCodeLength = 0;
+		root = null;
+		for(int i = 0; i < frequencies.length; i++)
+		{
+			codeLength[i] = (byte)newLengths[i];
+			maxCodeLength = Math.max(maxCodeLength, newLengths[i]);
+			if(newLengths[i] != 0)
+			{
+				codeMap.put(i, codeToString(codeBits[i], newLengths[i]));
+				root = addCode(root, i, (int)frequencies[i], codeMap.get(i), 0);
+			}
+		}
+		// every code is used so each internal node has two children
+		totalNodes = (2 * numLeaves) - 1;
+	}
+	
+	/**
+	 * adds a leaf for the given value at the end of the path spelled
+	 * out by code, making internal nodes along the way as needed	
+	 */
+	private TreeNode addCode(TreeNode node, int value, int frequency, String code, int depth)
+	{
+		if(depth == code.length())
+		{
+			return new TreeNode(value, frequency);
+		}
+		if(node == null)
+		{
+			// -1 a placeholder value since no node can ever have a negative value
+			node = new TreeNode(-1, 0);
+		}
+		if(code.startsWith(LEFT, depth))
+		{
+			node.setLeft(addCode(node.getLeft(), value, frequency, code, depth + 1));
+		}
+		else
+		{
+			node.setRight(addCode(node.getRight(), value, frequency, code, depth + 1));
+		}
+		return node;
+	}
+	
 	/**
 	 * creates the map containing the frequencies of all elements
 	 */
@@ -79,8 +282,8 @@ public class HuffmanCodeTree
 	{
 		while(pq.size() > 1)
 		{
-			TreeNode item = (TreeNode)pq.deq();
-			TreeNode item2 = (TreeNode)pq.deq();
+			TreeNode item = pq.deq();
+			TreeNode item2 = pq.deq();
 			// -1 a placeholder value since no node can ever have a negative value
 			TreeNode node = new TreeNode(-1, item.getFrequency() + item2.getFrequency());
 			totalNodes++;
@@ -99,33 +302,101 @@ public class HuffmanCodeTree
 	{
 		TreeNode node = root;
 		StringBuilder emptyCode = new StringBuilder();
-		makeCodeMap(node, emptyCode);
+		makeCodeMap(node, emptyCode, 0);
 	}
 	
 	/**
 	 * travereses the tree to get the new codes
 	 * for each character in the input ile	
 	 */
-	private void makeCodeMap(TreeNode node, StringBuilder code)
+	private void makeCodeMap(TreeNode node, StringBuilder code, int bits)
 	{
 		if(node != null)
 		{
 			if(node.isLeaf())
 			{
 				codeMap.put(node.getValue(), code.toString());
+				// codes too long for the table are only in the code map
+				if(code.length() <= MAX_TABLE_CODE_LENGTH)
+				{
+					codeBits[node.getValue()] = bits;
+				}
+				codeLength[node.getValue()] = (byte)code.length();
+				maxCodeLength = Math.max(maxCodeLength, code.length());
 			}
 			else
 			{
 				code.append(LEFT);
-				makeCodeMap(node.getLeft(), code);
+				makeCodeMap(node.getLeft(), code, bits << 1);
 				code.deleteCharAt(code.length() - 1);
 				code.append(RIGHT);
-				makeCodeMap(node.getRight(), code);
+				makeCodeMap(node.getRight(), code, (bits << 1) | 1);
 				code.deleteCharAt(code.length() - 1);
 			}
 		}
 	}
 	
+	/**
+	 * swaps the codes made from the tree for canonical codes of
+	 * the same lengths. a lone value gets a 1 bit code since
+	 * canonical headers use 0 for values that aren't present	
+	 */
+	public void makeCanonicalCodes()
+	{
+		if(maxCodeLength > HuffCanonicalCodes.MAX_CODE_LENGTH)
+		{
+			throw new IllegalStateException("codes too long for the canonical format.");
+		}
+		if(canonicalLengths.length != codeLength.length)
+		{
+			canonicalLengths = new int[codeLength.length];
+		}
+		for(int i = 0; i < codeLength.length; i++)
+		{
+			canonicalLengths[i] = codeLength[i];
+		}
+		if(numLeaves == 1)
+		{
+			canonicalLengths[root.getValue()] = 1;
+			codeLength[root.getValue()] = 1;
+			maxCodeLength = 1;
+		}
+		HuffCanonicalCodes.assignCodes(canonicalLengths, codeBits);
+		for(Integer value: codeMap.keySet())
+		{
+			codeMap.put(value, codeToString(codeBits[value], codeLength[value]));
+		}
+	}
+	
+	/**
+	 * returns the given right aligned code as a string of 0s and 1s	
+	 */
+	private String codeToString(int bits, int length)
+	{
+		StringBuilder code = new StringBuilder();
+		for(int i = length - 1; i >= 0; i--)
+		{
+			if( ((bits >>> i) & 1) == 0 )
+			{
+				code.append(LEFT);
+			}
+			else
+			{
+				code.append(RIGHT);
+			}
+		}
+		return code.toString();
+	}
+	
+	/**
+	 * returns the code lengths indexed by value after
+	 * makeCanonicalCodes has been called	
+	 */
+	public int[] getCanonicalLengths()
+	{
+		return canonicalLengths;
+	}
+	
 	/**
 	 * returns the number of leaves in this huffman tree	
 	 */
@@ -169,6 +440,32 @@ public class HuffmanCodeTree
 		return codeMap;
 	}
 	
+	/**
+	 * returns the new codes indexed by value, 
+	 * right aligned in each int	
+	 */
+	public int[] getCodeBits()
+	{
+		return codeBits;
+	}
+	
+	/**
+	 * returns the lengths of the new codes
+	 * indexed by value, 0 for values not in the tree	
+	 */
+	public byte[] getCodeLengths()
+	{
+		return codeLength;
+	}
+	
+	/**
+	 * returns the length of the longest new code	
+	 */
+	public int getMaxCodeLength()
+	{
+		return maxCodeLength;
+	}
+	
 	/**
 	 * sets the root of this huffman tree
 	 * to the given node	
@@ -190,5 +487,10 @@ public class HuffmanCodeTree
 		pq.clear();
 		freqMap.clear();
 		codeMap.clear();
+		Arrays.fill(codeBits, 0);
+		Arrays.fill(codeLength, (byte)0);
+		Arrays.fill(canonicalLengths, 0);
+		maxCodeLength = 0;
+		lengthLimitCost = 0;
 	}
 }
\ No newline at end of file
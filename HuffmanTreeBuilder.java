@@ -0,0 +1,344 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * builds huffman trees out of primitive arrays instead of linked
+ * nodes. leaves are numbered 0 to numLeaves - 1 in increasing value
+ * order and internal nodes are numbered in the order they are made.
+ * ties between equal weights go to the lower numbered node, which is
+ * the same order PriorityQ hands nodes back in, so every builder here
+ * makes exactly the same tree HuffmanCodeTree always has
+ */
+public class HuffmanTreeBuilder
+{
+	// the two queue builder packs a leaf's number into this many low
+	// bits of its sort key, with its weight in the bits above
+	private static final int LEAF_BITS = 20;
+	private long[] weight;
+	// children of internal nodes, -1 for leaves
+	private int[] left;
+	private int[] right;
+	// the value a leaf stands for, -1 for internal nodes
+	private int[] value;
+	// the leaf number of each value
+	private int[] leafOf;
+	private int[] depth;
+	private int numLeaves;
+	private int numNodes;
+	private int[] heap;
+	private int heapSize;
+	// leaves sorted by weight for the two queue builder
+	private int[] sortedLeaves;
+	private long[] sortKeys;
+
+	/**
+	 * initializes the node arrays for a 257 value alphabet,
+	 * they grow as needed
+	 */
+	public HuffmanTreeBuilder()
+	{
+		allocate(IHuffConstants.ALPH_SIZE + 1);
+	}
+
+	/**
+	 * makes room for the trees of an alphabet with
+	 * the given number of values
+	 */
+	private void allocate(int alphSize)
+	{
+		int maxNodes = Math.max(1, 2 * alphSize - 1);
+		weight = new long[maxNodes];
+		left = new int[maxNodes];
+		right = new int[maxNodes];
+		value = new int[maxNodes];
+		depth = new int[maxNodes];
+		leafOf = new int[alphSize];
+		heap = new int[alphSize];
+		sortedLeaves = new int[alphSize];
+		sortKeys = new long[alphSize];
+	}
+
+	/**
+	 * adds a leaf for every value with a nonzero frequency
+	 */
+	private void makeLeaves(long[] freqs)
+	{
+		if(heap.length < freqs.length)
+		{
+			allocate(freqs.length);
+		}
+		numLeaves = 0;
+		for(int i = 0; i < freqs.length; i++)
+		{
+			if(freqs[i] != 0)
+			{
+				weight[numLeaves] = freqs[i];
+				left[numLeaves] = -1;
+				right[numLeaves] = -1;
+				value[numLeaves] = i;
+				leafOf[i] = numLeaves;
+				numLeaves++;
+			}
+		}
+		numNodes = numLeaves;
+	}
+
+	/**
+	 * makes an internal node out of the two given nodes
+	 * and returns its number
+	 */
+	private int makeInternalNode(int item, int item2)
+	{
+		weight[numNodes] = weight[item] + weight[item2];
+		left[numNodes] = item;
+		right[numNodes] = item2;
+		value[numNodes] = -1;
+		numNodes++;
+		return numNodes - 1;
+	}
+
+	/**
+	 * builds the tree for the given frequencies with a binary
+	 * min heap and returns the number of the root, or -1 if
+	 * every frequency is zero
+	 */
+	public int buildWithHeap(long[] freqs)
+	{
+		makeLeaves(freqs);
+		heapSize = 0;
+		for(int i = 0; i < numLeaves; i++)
+		{
+			heap[heapSize] = i;
+			heapSize++;
+		}
+		// the leaves are in number order so a heapify
+		// is all that's needed to order them by weight
+		for(int i = (heapSize / 2) - 1; i >= 0; i--)
+		{
+			siftDown(i);
+		}
+		while(heapSize > 1)
+		{
+			int item = heap[0];
+			heapSize--;
+			heap[0] = heap[heapSize];
+			siftDown(0);
+			// replacing the top instead of adding to the end
+			// saves a sift for every new node
+			heap[0] = makeInternalNode(item, heap[0]);
+			siftDown(0);
+		}
+		return numLeaves == 0 ? -1 : numNodes - 1;
+	}
+
+	/**
+	 * returns true if node a comes out of the queue before node b
+	 */
+	private boolean comesBefore(int a, int b)
+	{
+		return (weight[a] < weight[b]) || ( (weight[a] == weight[b]) && (a < b) );
+	}
+
+	/**
+	 * moves the node at the given heap index down
+	 * until neither of its children come before it
+	 */
+	private void siftDown(int index)
+	{
+		int node = heap[index];
+		int child = (2 * index) + 1;
+		while(child < heapSize)
+		{
+			if( (child + 1 < heapSize) && comesBefore(heap[child + 1], heap[child]) )
+			{
+				child++;
+			}
+			if(!comesBefore(heap[child], node))
+			{
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+			child = (2 * index) + 1;
+		}
+		heap[index] = node;
+	}
+
+	/**
+	 * builds the tree for the given frequencies by sorting the
+	 * leaves and merging them with the two queue method, returns
+	 * the number of the root, or -1 if every frequency is zero
+	 */
+	public int buildWithTwoQueues(long[] freqs)
+	{
+		makeLeaves(freqs);
+		if(fitsInSortKeys())
+		{
+			for(int i = 0; i < numLeaves; i++)
+			{
+				// leaf numbers fit in the low bits so sorting the keys
+				// sorts by weight then by leaf number
+				sortKeys[i] = (weight[i] << LEAF_BITS) | i;
+			}
+			Arrays.sort(sortKeys, 0, numLeaves);
+			for(int i = 0; i < numLeaves; i++)
+			{
+				sortedLeaves[i] = (int)(sortKeys[i] & ((1 << LEAF_BITS) - 1));
+			}
+		}
+		else
+		{
+			Integer[] leaves = new Integer[numLeaves];
+			for(int i = 0; i < numLeaves; i++)
+			{
+				leaves[i] = i;
+			}
+			Arrays.sort(leaves, Comparator.<Integer>comparingLong(leaf -> weight[leaf])
+				.thenComparingInt(leaf -> leaf));
+			for(int i = 0; i < numLeaves; i++)
+			{
+				sortedLeaves[i] = leaves[i];
+			}
+		}
+		return mergeSortedLeaves();
+	}
+
+	/**
+	 * returns whether every leaf number fits in LEAF_BITS bits and
+	 * every weight fits in the bits of a sort key above them
+	 */
+	private boolean fitsInSortKeys()
+	{
+		if(numLeaves > (1 << LEAF_BITS))
+		{
+			return false;
+		}
+		for(int i = 0; i < numLeaves; i++)
+		{
+			if( (weight[i] >>> (Long.SIZE - 1 - LEAF_BITS)) != 0 )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * builds the tree in linear time for frequencies that are already
+	 * in order, sortedValues holds the nonzero values sorted by
+	 * frequency with ties in increasing value order. returns the
+	 * number of the root, or -1 if there are no values
+	 */
+	public int buildFromSorted(long[] freqs, int[] sortedValues, int numValues)
+	{
+		makeLeaves(freqs);
+		if(numValues != numLeaves)
+		{
+			throw new IllegalArgumentException("sorted values don't match the frequencies.");
+		}
+		for(int i = 0; i < numValues; i++)
+		{
+			sortedLeaves[i] = leafOf[sortedValues[i]];
+		}
+		return mergeSortedLeaves();
+	}
+
+	/**
+	 * combines the sorted leaves into a tree, taking the two lightest
+	 * nodes from the front of either the leaf queue or the queue of
+	 * internal nodes, which comes out sorted on its own
+	 */
+	private int mergeSortedLeaves()
+	{
+		if(numLeaves == 0)
+		{
+			return -1;
+		}
+		int leafHead = 0;
+		int internalHead = numLeaves;
+		while( (numLeaves - leafHead) + (numNodes - internalHead) > 1 )
+		{
+			int item;
+			int item2;
+			// a leaf wins a tie since leaves are numbered before internal nodes
+			if( (leafHead < numLeaves) && ( (internalHead == numNodes)
+				|| (weight[sortedLeaves[leafHead]] <= weight[internalHead]) ) )
+			{
+				item = sortedLeaves[leafHead++];
+			}
+			else
+			{
+				item = internalHead++;
+			}
+			if( (leafHead < numLeaves) && ( (internalHead == numNodes)
+				|| (weight[sortedLeaves[leafHead]] <= weight[internalHead]) ) )
+			{
+				item2 = sortedLeaves[leafHead++];
+			}
+			else
+			{
+				item2 = internalHead++;
+			}
+			makeInternalNode(item, item2);
+		}
+		return numNodes - 1;
+	}
+
+	/**
+	 * fills lengthsOut with the code length of every value in the
+	 * tree with the given root, values not in the tree are left alone
+	 */
+	public void getCodeLengths(int root, int[] lengthsOut)
+	{
+		if(root != -1)
+		{
+			depth[root] = 0;
+			// parents are always numbered after their children
+			for(int node = root; node >= numLeaves; node--)
+			{
+				depth[left[node]] = depth[node] + 1;
+				depth[right[node]] = depth[node] + 1;
+			}
+			for(int leaf = 0; leaf < numLeaves; leaf++)
+			{
+				lengthsOut[value[leaf]] = depth[leaf];
+			}
+		}
+	}
+
+	/**
+	 * makes a linked TreeNode copy of the tree with the given root
+	 */
+	public TreeNode toTreeNode(int node)
+	{
+		if(node == -1)
+		{
+			return null;
+		}
+		if(left[node] == -1)
+		{
+			return new TreeNode(value[node], (int)weight[node]);
+		}
+		// -1 a placeholder value since no node can ever have a negative value
+		TreeNode newNode = new TreeNode(-1, (int)weight[node]);
+		newNode.setLeft(toTreeNode(left[node]));
+		newNode.setRight(toTreeNode(right[node]));
+		return newNode;
+	}
+
+	/**
+	 * returns the number of leaves in the last tree built
+	 */
+	public int getNumLeaves()
+	{
+		return numLeaves;
+	}
+
+	/**
+	 * returns the total number of nodes in the last tree built
+	 */
+	public int getNumNodes()
+	{
+		return numNodes;
+	}
+}
@@ -0,0 +1,26 @@
+/**
+ * header formats added on top of STORE_COUNTS and STORE_TREE.
+ * they all come right after MAGIC_NUMBER like the original two
+ */
+public interface IHuffFormats extends IHuffConstants
+{
+	// only the code length of each value is stored and the
+	// codes are rebuilt as canonical huffman codes
+	int STORE_CANONICAL = 0xface8204;
+	// the block size comes next, then blocks that each carry
+	// their own canonical header, ending with an end block
+	int STORE_BLOCKS = 0xface8205;
+	// the same as STORE_BLOCKS with a block index footer
+	// after the end block for random access
+	int STORE_INDEXED_BLOCKS = 0xface8206;
+	// the counts format for inputs too big for 32 bit counts,
+	// 6 bits giving how wide the counts are, then all 256 of
+	// the counts at that width
+	int STORE_LARGE_COUNTS = 0xface8207;
+	// no header, the codes start right away and adapt as
+	// they go, new values coming after the NYT code in 9 bits
+	int STORE_ADAPTIVE = 0xface8208;
+	// the 32 bit id of a shared dictionary that was loaded ahead
+	// of time, the codes it holds start right after the id
+	int STORE_DICTIONARY = 0xface8209;
+}
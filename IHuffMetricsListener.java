@@ -0,0 +1,12 @@
+/**
+ * gets the metrics of every compress and uncompress
+ * call once the call has finished
+ */
+public interface IHuffMetricsListener
+{
+	/**
+	 * called on the thread that made the call, so it
+	 * should hand the metrics off rather than block
+	 */
+	void metricsRecorded(HuffMetrics metrics);
+}
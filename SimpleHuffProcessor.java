@@ -1,15 +1,25 @@
-
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
 
-public class SimpleHuffProcessor implements IHuffProcessor {
+public class SimpleHuffProcessor implements IHuffProcessor, IHuffFormats {
 	
 	private IHuffViewer myViewer;
 	// ppc short for pre process compress
 	private boolean calledPPC;
 	// comp short for compressor
 	private HuffCompressor comp;
+	private IHuffMetricsListener metricsListener;
+	// the metrics of the last compress or uncompress call
+	private HuffMetrics lastMetrics;
+	// the longest code allowed in the whole file formats, 0 for no limit
+	private int maxCodeLength;
+	// how the block methods encode blocks
+	private HuffBlockOptions blockOptions;
+	// kept between calls so loaded dictionaries stay loaded
+	private HuffUncompressor uncomp;
 	
 	/**
 	 * intialzies the instance variables	
@@ -18,6 +28,9 @@ public class SimpleHuffProcessor implements IHuffProcessor {
 	{
 		calledPPC = false;
 		comp = new HuffCompressor();
+		maxCodeLength = 0;
+		blockOptions = HuffBlockOptions.DEFAULT;
+		uncomp = new HuffUncompressor();
 	}
 
     /**
@@ -28,7 +41,7 @@ public class SimpleHuffProcessor implements IHuffProcessor {
      * @param in is the stream which could be subsequently compressed
      * @param headerFormat a constant from IHuffProcessor that determines what kind of
      * header to use, standard count format, standard tree format, or
-     * possibly some format added in the future.
+     * the canonical code length format from IHuffFormats.
      * @return number of bits saved by compression or some other measure
      * Note, to determine the number of
      * bits saved, the number of bits written includes
@@ -38,14 +51,91 @@ public class SimpleHuffProcessor implements IHuffProcessor {
      * @throws IOException if an error occurs while reading from the input file.
      */
     public int preprocessCompress(InputStream in, int headerFormat) throws IOException {
-		if( (headerFormat != STORE_COUNTS) && (headerFormat != STORE_TREE) )
+		checkHeaderFormat(headerFormat);
+		calledPPC = true;
+		// counted a chunk at a time straight from the stream
+		return comp.preprocessCompress(in, headerFormat);
+    }	
+
+    /**
+     * Same as <code>preprocessCompress</code> but returns the bits saved
+     * as a long, so the result is right for inputs over 256 MB. Use
+     * STORE_LARGE_COUNTS for the count header if any value can show up
+     * more than Integer.MAX_VALUE times.
+     * @param in is the stream which could be subsequently compressed
+     * @param headerFormat a constant from IHuffProcessor or IHuffFormats
+     * @return number of bits saved by compression
+     * @throws IOException if an error occurs while reading from the input file.
+     */
+    public long preprocessCompressLarge(InputStream in, int headerFormat) throws IOException {
+		checkHeaderFormat(headerFormat);
+		calledPPC = true;
+		// counted a chunk at a time straight from the stream
+		return comp.preprocessCompressLarge(in, headerFormat);
+    }
+
+    /**
+     * Counts bytes on up to the given number of threads in
+     * <code>preprocessCompress</code>. Only inputs of a few
+     * megabytes or more are split. The counts, and so the
+     * output, are the same no matter how many threads count.
+     * @param parallelism the most threads to count with, 1 for
+     * the calling thread only
+     */
+    public void setCountingThreads(int parallelism) {
+		comp.setHistogram(new HuffHistogram(parallelism));
+    }
+
+    /**
+     * Caps how long any code can get so decoders can use smaller lookup
+     * tables. The best codes that fit are found with package-merge, which
+     * costs a little compression when the limit is hit. Only the tree and
+     * canonical header formats can be used with a limit, as the count
+     * formats have the uncompressor build its own codes. Also applies to
+     * <code>compressFile</code>. The block methods take their limit from
+     * <code>setBlockOptions</code>.
+     * @param limit the most bits in a code, up to 32, or 0 for no limit
+     */
+    public void setMaxCodeLength(int limit) {
+		comp.setMaxCodeLength(limit);
+		maxCodeLength = limit;
+    }
+
+    /**
+     * Sets how the block methods encode each block. Options can cap the
+     * code lengths so decoders use smaller tables, split blocks into
+     * four interleaved streams that decode faster, try an LZ77 stage
+     * that turns repeated runs into lengths and distances back, and
+     * try order-1 codes picked by the byte before each byte. A block
+     * is written whichever way comes out smallest, and the uncompressor
+     * reads every kind without being told which was used.
+     * @param options the options, starting from HuffBlockOptions.DEFAULT
+     */
+    public void setBlockOptions(HuffBlockOptions options) {
+		blockOptions = options;
+    }
+
+    /**
+     * Returns how many more bits the codes for the data take because of
+     * the limit set with <code>setMaxCodeLength</code>, as of the last call
+     * to <code>preprocessCompress</code>. The header isn't counted.
+     * @return the extra bits, or 0 if the limit didn't change any codes
+     */
+    public long getLengthLimitCost() {
+		return comp.getLengthLimitCost();
+    }
+
+    /**
+     * makes sure the given header format is one the
+     * whole file compressor can write
+     */
+    private void checkHeaderFormat(int headerFormat) {
+		if( (headerFormat != STORE_COUNTS) && (headerFormat != STORE_TREE)
+			&& (headerFormat != STORE_CANONICAL) && (headerFormat != STORE_LARGE_COUNTS) )
 		{
 			throw new IllegalArgumentException("invalid headerForamt given.");
 		}
-		calledPPC = true;
-		BitInputStream inStream = new BitInputStream(in);
-		return comp.preprocessCompress(inStream, headerFormat);
-    }	
+    }
 
     /**
 	 * Compresses input to output, where the same InputStream has
@@ -67,9 +157,32 @@ public class SimpleHuffProcessor implements IHuffProcessor {
 			throw new IllegalStateException("must call preprocessCompress() before compress()");
 		}
 		calledPPC = false;
-		BitInputStream inStream = new BitInputStream(in);
-		BitOutputStream outStream = new BitOutputStream(out);
-		return comp.compress(inStream, outStream, force);
+		int bitsWritten = comp.compress(in, out, force);
+		report(comp.getMetrics());
+		return bitsWritten;
+    }
+
+    /**
+     * Same as <code>compress</code> but returns the bits written
+     * as a long, so the result is right for inputs over 256 MB.
+     * <br> pre: <code>preprocessCompress</code> or
+     * <code>preprocessCompressLarge</code> must be called before this method
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * @param force if this is true create the output file even if it is larger than the input file.
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long compressLarge(InputStream in, OutputStream out, boolean force) throws IOException {
+		if(!calledPPC)
+		{
+			throw new IllegalStateException("must call preprocessCompress() before compress()");
+		}
+		calledPPC = false;
+		long bitsWritten = comp.compressLarge(in, out, force);
+		report(comp.getMetrics());
+		return bitsWritten;
     }
 
     /**
@@ -82,11 +195,326 @@ public class SimpleHuffProcessor implements IHuffProcessor {
      * writing to the output file.
      */
     public int uncompress(InputStream in, OutputStream out) throws IOException {
-		BitInputStream inStream = new BitInputStream(in);
-		BitOutputStream outStream = new BitOutputStream(out);
-		// uncomp short for uncompressor
-		HuffUncompressor uncomp = new HuffUncompressor();
-		return uncomp.uncompress(inStream, outStream);
+		int bitsWritten = uncomp.uncompress(in, out);
+		report(uncomp.getMetrics());
+		return bitsWritten;
+    }
+
+    /**
+     * Same as <code>uncompress</code> but returns the bits written
+     * as a long, so the result is right for outputs over 256 MB.
+     * @param in is the previously compressed data (not a BitInputStream)
+     * @param out is the uncompressed file/stream
+     * @return the number of bits written to the uncompressed file/stream
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long uncompressLarge(InputStream in, OutputStream out) throws IOException {
+		long bitsWritten = uncomp.uncompressLarge(in, out);
+		report(uncomp.getMetrics());
+		return bitsWritten;
+    }
+
+    /**
+     * Compresses input to output in a single pass using the block
+     * format, without calling <code>preprocessCompress</code> first.
+     * The input is read once, a block at a time, so it can be a pipe
+     * or socket, and memory use is bounded by the block size. Blocks
+     * that don't get smaller, like already compressed or encrypted
+     * data, are stored as they are and copied back out when
+     * uncompressing, so unlike <code>compress</code> there's always
+     * an output and it's never more than a few bytes a block bigger.
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * for the compressed file (not a BitOutputStream)
+     * @param blockSize the number of input bytes that share a tree, from
+     * HuffBlockCompressor.MIN_BLOCK_SIZE to HuffBlockCodec.MAX_BLOCK_SIZE
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long compressStreaming(InputStream in, OutputStream out, int blockSize) throws IOException {
+		HuffBlockCompressor blockComp = new HuffBlockCompressor(blockSize);
+		blockComp.setOptions(blockOptions);
+		HuffMetricsRecorder metrics = new HuffMetricsRecorder();
+		long phaseStart = metrics.startPhase();
+		long bitsWritten = blockComp.compress(in, out);
+		metrics.endPhase(HuffMetrics.ENCODE, phaseStart);
+		reportSinglePass(metrics, blockComp.getBytesRead(), bitsWritten);
+		return bitsWritten;
+    }
+
+    /**
+     * Compresses input to output with the codes of a shared dictionary,
+     * without calling <code>preprocessCompress</code> first. Nothing is
+     * counted and no tree is built, and the header is just the id of
+     * the dictionary, so it suits lots of small records. The dictionary
+     * has to be loaded with <code>addDictionary</code> to uncompress.
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * for the compressed file (not a BitOutputStream)
+     * @param dictionary the dictionary from HuffDictionary.train or read
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long compressWithDictionary(InputStream in, OutputStream out, HuffDictionary dictionary)
+    		throws IOException {
+		HuffMetricsRecorder metrics = new HuffMetricsRecorder();
+		long phaseStart = metrics.startPhase();
+		// counted here so the dictionary itself keeps no state
+		CountingInputStream countingIn = new CountingInputStream(in);
+		long bitsWritten = dictionary.compress(countingIn, out);
+		metrics.endPhase(HuffMetrics.ENCODE, phaseStart);
+		reportSinglePass(metrics, countingIn.getCount(), bitsWritten);
+		return bitsWritten;
+    }
+
+    /**
+     * Loads a dictionary so <code>uncompress</code> can read files that
+     * were compressed with it. Any number can be loaded at once, and
+     * each file names the one it needs.
+     * @param dictionary the dictionary from HuffDictionary.train or read
+     */
+    public void addDictionary(HuffDictionary dictionary) {
+		uncomp.addDictionary(dictionary);
+    }
+
+    /**
+     * Compresses input to output in a single pass with adaptive
+     * huffman codes, without calling <code>preprocessCompress</code>
+     * first. The codes change after every byte, so there's no header
+     * and no blocks, and memory use stays the same for any input.
+     * Slower than the other formats, so best for live streams.
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * for the compressed file (not a BitOutputStream)
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long compressAdaptive(InputStream in, OutputStream out) throws IOException {
+		HuffAdaptiveCompressor adaptiveComp = new HuffAdaptiveCompressor();
+		HuffMetricsRecorder metrics = new HuffMetricsRecorder();
+		long phaseStart = metrics.startPhase();
+		long bitsWritten = adaptiveComp.compress(in, out);
+		metrics.endPhase(HuffMetrics.ENCODE, phaseStart);
+		reportSinglePass(metrics, adaptiveComp.getBytesRead(), bitsWritten);
+		return bitsWritten;
+    }
+
+    /**
+     * Compresses input to output in a single pass like
+     * <code>compressStreaming</code>, adding a block index footer
+     * after the blocks. Files written this way can be read a range
+     * at a time, or uncompressed on several threads, with
+     * HuffIndexedArchive, and still work with <code>uncompress</code>.
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * for the compressed file (not a BitOutputStream)
+     * @param blockSize the number of input bytes that share a tree
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long compressIndexed(InputStream in, OutputStream out, int blockSize) throws IOException {
+		HuffBlockCompressor blockComp = new HuffBlockCompressor(blockSize, true);
+		blockComp.setOptions(blockOptions);
+		HuffMetricsRecorder metrics = new HuffMetricsRecorder();
+		long phaseStart = metrics.startPhase();
+		long bitsWritten = blockComp.compress(in, out);
+		metrics.endPhase(HuffMetrics.ENCODE, phaseStart);
+		reportSinglePass(metrics, blockComp.getBytesRead(), bitsWritten);
+		return bitsWritten;
+    }
+
+    /**
+     * Compresses input to output with the block format like
+     * <code>compressStreaming</code>, building trees and encoding
+     * blocks on several threads. The output is identical to what
+     * <code>compressStreaming</code> writes for the same block size.
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * for the compressed file (not a BitOutputStream)
+     * @param blockSize the number of input bytes that share a tree
+     * @param parallelism the most threads to encode blocks with
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long compressParallel(InputStream in, OutputStream out, int blockSize,
+    		int parallelism) throws IOException {
+		HuffParallelCompressor parallelComp = new HuffParallelCompressor(blockSize, parallelism);
+		parallelComp.setOptions(blockOptions);
+		try {
+			HuffMetricsRecorder metrics = new HuffMetricsRecorder();
+			long phaseStart = metrics.startPhase();
+			long bitsWritten = parallelComp.compress(in, out);
+			metrics.endPhase(HuffMetrics.ENCODE, phaseStart);
+			reportSinglePass(metrics, parallelComp.getBytesRead(), bitsWritten);
+			return bitsWritten;
+		} finally {
+			parallelComp.shutdown();
+		}
+    }
+
+    /**
+     * Compresses input to output with the block format like
+     * <code>compressStreaming</code>, reading the input, encoding blocks
+     * and writing the output on separate threads so slow reads and
+     * writes overlap with the encoding. The output is identical to what
+     * <code>compressStreaming</code> writes for the same block size.
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * for the compressed file (not a BitOutputStream)
+     * @param blockSize the number of input bytes that share a tree
+     * @param numEncoders the number of threads to encode blocks with
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long compressPipelined(InputStream in, OutputStream out, int blockSize,
+    		int numEncoders) throws IOException {
+		HuffPipelinedCompressor pipelinedComp = new HuffPipelinedCompressor(blockSize, numEncoders);
+		pipelinedComp.setOptions(blockOptions);
+		try {
+			HuffMetricsRecorder metrics = new HuffMetricsRecorder();
+			long phaseStart = metrics.startPhase();
+			long bitsWritten = pipelinedComp.compress(in, out);
+			metrics.endPhase(HuffMetrics.ENCODE, phaseStart);
+			reportSinglePass(metrics, pipelinedComp.getBytesRead(), bitsWritten);
+			return bitsWritten;
+		} finally {
+			pipelinedComp.shutdown();
+		}
+    }
+
+    /**
+     * Uncompresses data written in the block format, reading the
+     * input, decoding blocks and writing the output on separate
+     * threads so slow reads and writes overlap with the decoding.
+     * @param in is the previously compressed data (not a BitInputStream)
+     * @param out is the uncompressed file/stream
+     * @param numDecoders the number of threads to decode blocks with
+     * @return the number of bits written to the uncompressed file/stream
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long uncompressPipelined(InputStream in, OutputStream out,
+    		int numDecoders) throws IOException {
+		HuffPipelinedUncompressor pipelinedUncomp = new HuffPipelinedUncompressor(numDecoders);
+		try {
+			HuffMetricsRecorder metrics = new HuffMetricsRecorder();
+			long phaseStart = metrics.startPhase();
+			long bitsWritten = pipelinedUncomp.uncompress(in, out);
+			metrics.endPhase(HuffMetrics.DECODE, phaseStart);
+			metrics.setBytes(pipelinedUncomp.getBytesRead(), bitsWritten / BITS_PER_WORD);
+			report(metrics.snapshot(HuffMetrics.UNCOMPRESS));
+			return bitsWritten;
+		} finally {
+			pipelinedUncomp.shutdown();
+		}
+    }
+
+    /**
+     * Compresses one file on disk to another by memory mapping the input,
+     * counting and encoding it straight out of the mapping. Does the work
+     * of both <code>preprocessCompress</code> and <code>compress</code>
+     * and writes the same bytes they would.
+     * @param in the file to compress
+     * @param out the file to write the compressed data to
+     * @param headerFormat a constant from IHuffProcessor or IHuffFormats
+     * for the standard count, large count, standard tree or canonical header
+     * @param force if this is true create the output file even if it is larger than the input file.
+     * @return the number of bits written, or 0 if nothing was written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long compressFile(Path in, Path out, int headerFormat, boolean force) throws IOException {
+		checkHeaderFormat(headerFormat);
+		// fileComp short for file compressor
+		HuffFileCompressor fileComp = new HuffFileCompressor();
+		fileComp.setMaxCodeLength(maxCodeLength);
+		fileComp.preprocessCompress(in, headerFormat);
+		long bitsWritten = fileComp.compress(in, out, force);
+		report(fileComp.getMetrics());
+		return bitsWritten;
+    }
+
+    /**
+     * Uncompresses one file on disk to another, reading the input
+     * through a memory mapping. Works with every format.
+     * @param in the previously compressed file
+     * @param out the file to write the uncompressed data to
+     * @return the number of bits written to the uncompressed file
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public long uncompressFile(Path in, Path out) throws IOException {
+		HuffFileCompressor fileComp = new HuffFileCompressor();
+		long bitsWritten = fileComp.uncompress(in, out);
+		report(fileComp.getMetrics());
+		return bitsWritten;
+    }
+
+    /**
+     * Estimates what <code>preprocessCompress</code> would return for a
+     * file from a sample of it, reading only a small part of the file.
+     * Meant as a quick check of whether a file is worth compressing.
+     * Nothing is set up for <code>compress</code>. Use HuffSavingsEstimator
+     * directly to choose how much is sampled.
+     * @param in the file to estimate the savings of
+     * @param headerFormat a constant from IHuffProcessor or IHuffFormats
+     * for the standard count, large count, standard tree or canonical header
+     * @return the estimated bits saved and how far off that could be
+     * @throws IOException if an error occurs while reading from the input file.
+     */
+    public HuffSavingsEstimate estimateSavings(Path in, int headerFormat) throws IOException {
+		checkHeaderFormat(headerFormat);
+		return new HuffSavingsEstimator().estimate(in, headerFormat);
+    }
+
+    /**
+     * Sets the listener that gets the metrics of every compress and
+     * uncompress call as soon as the call finishes, or null for none.
+     * @param listener the listener to call
+     */
+    public void setMetricsListener(IHuffMetricsListener listener) {
+        metricsListener = listener;
+    }
+
+    /**
+     * Returns the metrics of the last compress or uncompress call:
+     * the time spent in each phase, bytes in and out, throughput,
+     * compression ratio, code length spread and bytes allocated.
+     * @return the metrics, or null if nothing has been compressed
+     * or uncompressed yet
+     */
+    public HuffMetrics getLastMetrics() {
+        return lastMetrics;
+    }
+
+    /**
+     * keeps the metrics of the call that just finished and passes
+     * them to the listener and viewer
+     */
+    private void report(HuffMetrics metrics) {
+        lastMetrics = metrics;
+        if (metricsListener != null) {
+            metricsListener.metricsRecorded(metrics);
+        }
+        if (myViewer != null) {
+            showString(metrics.toString());
+        }
+    }
+
+    /**
+     * reports a single pass compress call, timed as all one
+     * encode phase since the codes are built and used together
+     */
+    private void reportSinglePass(HuffMetricsRecorder metrics, long bytesRead, long bitsWritten) {
+        metrics.setBytes(bytesRead, (bitsWritten + BITS_PER_WORD - 1) / BITS_PER_WORD);
+        report(metrics.snapshot(HuffMetrics.COMPRESS));
     }
 
     public void setViewer(IHuffViewer viewer) {
@@ -98,4 +526,36 @@ public class SimpleHuffProcessor implements IHuffProcessor {
             myViewer.update(s);
         }
     }
+
+    /**
+     * an input stream that counts the bytes read through it
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+            count = 0;
+        }
+
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                count++;
+            }
+            return value;
+        }
+
+        public int read(byte[] dst, int off, int len) throws IOException {
+            int amtRead = super.read(dst, off, len);
+            if (amtRead > 0) {
+                count += amtRead;
+            }
+            return amtRead;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
 }
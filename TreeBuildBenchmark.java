@@ -0,0 +1,203 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * times building huffman trees with the linked list PriorityQ
+ * against the array heap and two queue builders in
+ * HuffmanTreeBuilder, for a few alphabet sizes. run with
+ * java TreeBuildBenchmark [milliseconds per case]
+ */
+public class TreeBuildBenchmark
+{
+	private static final int[] ALPHABET_SIZES = {257, 1024, 4096};
+	private static final int DEFAULT_MILLIS = 1000;
+	// keeps the jit from throwing away the trees
+	private static long sink;
+
+	public static void main(String[] args)
+	{
+		int millis = DEFAULT_MILLIS;
+		if(args.length > 0)
+		{
+			millis = Integer.parseInt(args[0]);
+		}
+		Random rand = new Random(314);
+		System.out.printf("%-10s %-16s %14s%n", "alphabet", "builder", "ns per tree");
+		for(int alphSize: ALPHABET_SIZES)
+		{
+			long[] freqs = new long[alphSize];
+			for(int i = 0; i < alphSize; i++)
+			{
+				// a skewed spread of counts with plenty of ties
+				freqs[i] = 1 + (long)Math.pow(rand.nextInt(1000), 2) / 50;
+			}
+			checkSameTree(freqs);
+			int[] sortedValues = sortValues(freqs);
+			report(alphSize, "PriorityQ", timePriorityQ(freqs, millis));
+			report(alphSize, "heap", timeHeap(freqs, millis));
+			report(alphSize, "two queue", timeTwoQueues(freqs, millis));
+			report(alphSize, "presorted", timeSorted(freqs, sortedValues, millis));
+		}
+	}
+
+	/**
+	 * prints one line of results
+	 */
+	private static void report(int alphSize, String name, double nanosPerTree)
+	{
+		System.out.printf("%-10d %-16s %14.0f%n", alphSize, name, nanosPerTree);
+	}
+
+	/**
+	 * builds a tree the way HuffmanCodeTree does with PriorityQ
+	 */
+	private static TreeNode buildWithPriorityQ(long[] freqs)
+	{
+		PriorityQ<TreeNode> pq = new PriorityQ<TreeNode>();
+		for(int i = 0; i < freqs.length; i++)
+		{
+			if(freqs[i] != 0)
+			{
+				pq.enq(new TreeNode(i, (int)freqs[i]), (int)freqs[i]);
+			}
+		}
+		while(pq.size() > 1)
+		{
+			TreeNode item = pq.deq();
+			TreeNode item2 = pq.deq();
+			TreeNode node = new TreeNode(-1, item.getFrequency() + item2.getFrequency());
+			node.setLeft(item);
+			node.setRight(item2);
+			pq.enq(node, node.getFrequency());
+		}
+		return pq.first();
+	}
+
+	/**
+	 * returns the average nanoseconds to build a tree with PriorityQ
+	 */
+	private static double timePriorityQ(long[] freqs, int millis)
+	{
+		long end = System.nanoTime() + (millis * 1000000L);
+		long start = System.nanoTime();
+		int count = 0;
+		while(System.nanoTime() < end)
+		{
+			sink += buildWithPriorityQ(freqs).getFrequency();
+			count++;
+		}
+		return (System.nanoTime() - start) / (double)count;
+	}
+
+	/**
+	 * returns the average nanoseconds to build a tree
+	 * with the heap builder
+	 */
+	private static double timeHeap(long[] freqs, int millis)
+	{
+		HuffmanTreeBuilder builder = new HuffmanTreeBuilder();
+		long end = System.nanoTime() + (millis * 1000000L);
+		long start = System.nanoTime();
+		int count = 0;
+		while(System.nanoTime() < end)
+		{
+			sink += builder.buildWithHeap(freqs);
+			count++;
+		}
+		return (System.nanoTime() - start) / (double)count;
+	}
+
+	/**
+	 * returns the average nanoseconds to build a tree with
+	 * the two queue builder, sort included
+	 */
+	private static double timeTwoQueues(long[] freqs, int millis)
+	{
+		HuffmanTreeBuilder builder = new HuffmanTreeBuilder();
+		long end = System.nanoTime() + (millis * 1000000L);
+		long start = System.nanoTime();
+		int count = 0;
+		while(System.nanoTime() < end)
+		{
+			sink += builder.buildWithTwoQueues(freqs);
+			count++;
+		}
+		return (System.nanoTime() - start) / (double)count;
+	}
+
+	/**
+	 * returns the average nanoseconds to build a tree with
+	 * the two queue builder on presorted values
+	 */
+	private static double timeSorted(long[] freqs, int[] sortedValues, int millis)
+	{
+		HuffmanTreeBuilder builder = new HuffmanTreeBuilder();
+		long end = System.nanoTime() + (millis * 1000000L);
+		long start = System.nanoTime();
+		int count = 0;
+		while(System.nanoTime() < end)
+		{
+			sink += builder.buildFromSorted(freqs, sortedValues, sortedValues.length);
+			count++;
+		}
+		return (System.nanoTime() - start) / (double)count;
+	}
+
+	/**
+	 * returns the values sorted by frequency, ties by value
+	 */
+	private static int[] sortValues(long[] freqs)
+	{
+		Integer[] values = new Integer[freqs.length];
+		for(int i = 0; i < values.length; i++)
+		{
+			values[i] = i;
+		}
+		Arrays.sort(values, (a, b) -> (freqs[a] != freqs[b]) ? Long.compare(freqs[a], freqs[b]) : a - b);
+		int[] sorted = new int[values.length];
+		for(int i = 0; i < values.length; i++)
+		{
+			sorted[i] = values[i];
+		}
+		return sorted;
+	}
+
+	/**
+	 * makes sure every builder gives every value the same code
+	 * length as PriorityQ does before timing anything
+	 */
+	private static void checkSameTree(long[] freqs)
+	{
+		int[] expected = new int[freqs.length];
+		fillDepths(buildWithPriorityQ(freqs), 0, expected);
+		HuffmanTreeBuilder builder = new HuffmanTreeBuilder();
+		int[] lengths = new int[freqs.length];
+		builder.getCodeLengths(builder.buildWithHeap(freqs), lengths);
+		boolean same = Arrays.equals(expected, lengths);
+		builder.getCodeLengths(builder.buildWithTwoQueues(freqs), lengths);
+		same = same && Arrays.equals(expected, lengths);
+		int[] sortedValues = sortValues(freqs);
+		builder.getCodeLengths(builder.buildFromSorted(freqs, sortedValues, sortedValues.length), lengths);
+		same = same && Arrays.equals(expected, lengths);
+		if(!same)
+		{
+			throw new IllegalStateException("builders made different trees.");
+		}
+	}
+
+	/**
+	 * records the depth of every leaf under the given node
+	 */
+	private static void fillDepths(TreeNode node, int depth, int[] lengths)
+	{
+		if(node.isLeaf())
+		{
+			lengths[node.getValue()] = depth;
+		}
+		else
+		{
+			fillDepths(node.getLeft(), depth + 1, lengths);
+			fillDepths(node.getRight(), depth + 1, lengths);
+		}
+	}
+}